@@ -0,0 +1,161 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Admission control in front of the booking path: a bound on requests in flight, with
+// immediate rejection once it is reached, and a token bucket per user ID so one client
+// cannot starve the others.
+//
+// Everything is lock-free. The in-flight count is a CAS-bounded counter, and each bucket
+// is a single AtomicLong holding the time the bucket will next be full (the "theoretical
+// arrival time" of the generic cell rate algorithm), so a check is one CAS. Outcome
+// counters are LongAdders, which do not contend when many threads update them.
+//
+// A request turned away by the in-flight bound gets its user's token back. Past the
+// tracked-user limit, one pass drops a quarter of the buckets: full ones, which behave
+// exactly like missing ones, then those nearest to full. A pass so runs at most once per
+// limit / 4 new users, and a dropped bucket that was not yet full gives its user at most
+// one extra burst.
+public class AdmissionController {
+    public enum Decision { ADMITTED, RATE_LIMITED, OVERLOADED }
+
+    private static final int MAX_TRACKED_USERS = 100_000;
+
+    private final int maxInFlight;
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final int maxTrackedUsers;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder shedOverloaded = new LongAdder();
+    private final LongAdder shedRateLimited = new LongAdder();
+
+    // Constructor - each user gets tokensPerSecond, and may spend up to burst at once
+    public AdmissionController(int maxInFlight, double tokensPerSecond, int burst) {
+        this(maxInFlight, tokensPerSecond, burst, MAX_TRACKED_USERS);
+    }
+
+    // Constructor - with buckets kept for about maxTrackedUsers users
+    public AdmissionController(int maxInFlight, double tokensPerSecond, int burst, int maxTrackedUsers) {
+        if (maxInFlight <= 0 || tokensPerSecond <= 0 || burst <= 0 || maxTrackedUsers <= 0) {
+            throw new IllegalArgumentException("Admission limits must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        this.nanosPerToken = (long) (1e9 / tokensPerSecond);
+        this.burstNanos = nanosPerToken * burst;
+        this.maxTrackedUsers = maxTrackedUsers;
+    }
+
+    // The controller configured by cinema.admission.maxInFlight, cinema.admission.userRate
+    // and cinema.admission.userBurst, null when maxInFlight is not set
+    public static AdmissionController create() {
+        Integer maxInFlight = Integer.getInteger("cinema.admission.maxInFlight");
+        if (maxInFlight == null) {
+            return null;
+        }
+        double userRate = Double.parseDouble(System.getProperty("cinema.admission.userRate", "10"));
+        int userBurst = Integer.getInteger("cinema.admission.userBurst", 20);
+        return new AdmissionController(maxInFlight, userRate, userBurst);
+    }
+
+    // Try to admit a request. On ADMITTED the caller must call release() when done.
+    // A null userId skips the per-user limit.
+    public Decision tryAcquire(String userId) {
+        AtomicLong bucket = null;
+        if (userId != null) {
+            bucket = takeToken(userId);
+            if (bucket == null) {
+                shedRateLimited.increment();
+                return Decision.RATE_LIMITED;
+            }
+        }
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxInFlight) {
+                if (bucket != null) {
+                    bucket.addAndGet(-nanosPerToken); // the request was not served
+                }
+                shedOverloaded.increment();
+                return Decision.OVERLOADED;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        accepted.increment();
+        return Decision.ADMITTED;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    // Take one token from the user's bucket and return the bucket, null if it is empty
+    private AtomicLong takeToken(String userId) {
+        AtomicLong bucket = buckets.get(userId);
+        if (bucket == null) {
+            if (buckets.size() >= maxTrackedUsers) {
+                evictBuckets();
+            }
+            bucket = buckets.computeIfAbsent(userId, key -> new AtomicLong(System.nanoTime()));
+        }
+        long now = System.nanoTime();
+        while (true) {
+            long fullAt = bucket.get();
+            long next = (fullAt - now > 0 ? fullAt : now) + nanosPerToken;
+            if (next - now > burstNanos) {
+                return null;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return bucket;
+            }
+        }
+    }
+
+    // Drop every full bucket and at least a quarter of all of them, nearest to full first.
+    // One caller evicts at a time; the others go ahead meanwhile.
+    private void evictBuckets() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            // Time until each bucket is full, relative to now so the sort is overflow-safe
+            long[] untilFull = buckets.values().stream().mapToLong(bucket -> bucket.get() - now).toArray();
+            if (untilFull.length == 0) {
+                return;
+            }
+            Arrays.sort(untilFull);
+            long cutoff = Math.max(0, untilFull[Math.min(untilFull.length, Math.max(1, maxTrackedUsers / 4)) - 1]);
+            buckets.values().removeIf(bucket -> bucket.get() - now <= cutoff);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    // Users with a bucket right now
+    public int trackedUsers() {
+        return buckets.size();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long acceptedCount() {
+        return accepted.sum();
+    }
+
+    public long shedOverloadedCount() {
+        return shedOverloaded.sum();
+    }
+
+    public long shedRateLimitedCount() {
+        return shedRateLimited.sum();
+    }
+}
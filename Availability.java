@@ -0,0 +1,40 @@
+import java.util.Collections;
+import java.util.List;
+
+// Snapshot of a showtime's free seats at one point in time. Immutable - the showtime
+// caches one per seat version and hands the same instance to every reader.
+public class Availability {
+    private static final int SEATS_PER_ROW = 10;
+
+    public final String showtimeId;
+    public final int totalSeats;
+    public final List<String> freeSeats;
+    public final long version; // seat version of the snapshot, see SeatEvent
+    public final String seatGrid; // free seats, SEATS_PER_ROW to a line, as the console shows them
+
+    // Constructor
+    public Availability(String showtimeId, int totalSeats, List<String> freeSeats, long version) {
+        this.showtimeId = showtimeId;
+        this.totalSeats = totalSeats;
+        this.freeSeats = Collections.unmodifiableList(freeSeats);
+        this.version = version;
+
+        StringBuilder grid = new StringBuilder();
+        for (int i = 0; i < freeSeats.size(); i++) {
+            grid.append(freeSeats.get(i)).append(' ');
+            if ((i + 1) % SEATS_PER_ROW == 0) {
+                grid.append('\n');
+            }
+        }
+        this.seatGrid = grid.toString();
+    }
+
+    public int freeCount() {
+        return freeSeats.size();
+    }
+
+    @Override
+    public String toString() {
+        return "Availability[" + showtimeId + ": " + freeCount() + "/" + totalSeats + " free]";
+    }
+}
@@ -1,34 +1,124 @@
-import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
-
-public class Booking implements Serializable {
-    private static final long serialVersionUID = 1L;
-    public String bookingId;
-    public String customerName;
-    public String movieTitle;
-    public String showtimeId;
-    public List<String> seatNumbers;
-    public LocalDateTime bookingTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+// Lightweight view over one row of a BookingStore.
+// Views are cheap to create and hold no booking data of their own.
+public class Booking {
+    private final BookingStore store;
+    private final int row;
 
     // Constructor
-    public Booking(String bookingId, String customerName, String movieTitle, String showtimeId, List<String> seatNumbers, LocalDateTime bookingTime) {
-        this.bookingId = bookingId;
-        this.customerName = customerName;
-        this.movieTitle = movieTitle;
-        this.showtimeId = showtimeId;
-        this.seatNumbers = new ArrayList<>(seatNumbers);
-        this.bookingTime = bookingTime;
-    }
-    
+    public Booking(BookingStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    // External booking IDs look like "B42"
+    public static String formatId(long id) {
+        return "B" + id;
+    }
+
+    // Parse an external booking ID, -1 if it is not in "B<number>" form
+    public static long parseId(String bookingId) {
+        if (bookingId == null || !bookingId.startsWith("B")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(bookingId.substring(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public int row() {
+        return row;
+    }
+
+    public long id() {
+        return store.id(row);
+    }
+
+    public String bookingId() {
+        return formatId(store.id(row));
+    }
+
+    // References into the IdTable - names and titles are looked up when rendering
+    public int movieRef() {
+        return store.movieRef(row);
+    }
+
+    public int showtimeRef() {
+        return store.showtimeRef(row);
+    }
+
+    public int userRef() {
+        return store.userRef(row);
+    }
+
+    public LocalDateTime bookingTime() {
+        return LocalDateTime.ofEpochSecond(store.bookedAt(row), 0, ZoneOffset.UTC);
+    }
+
+    // Seat slot indices into the showtime's seat layout
+    public int seatCount() {
+        return store.seatCount(row);
+    }
+
+    public int seatAt(int i) {
+        return store.seatAt(row, i);
+    }
+
+    public int[] seats() {
+        int[] seats = new int[seatCount()];
+        for (int i = 0; i < seats.length; i++) {
+            seats[i] = seatAt(i);
+        }
+        return seats;
+    }
+
+    // Seat labels joined with the given separator, e.g. "A1, A2"
+    public String seatLabels(Showtime showtime, String separator) {
+        StringBuilder labels = new StringBuilder();
+        int count = seatCount();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                labels.append(separator);
+            }
+            labels.append(showtime.seatLabel(seatAt(i)));
+        }
+        return labels.toString();
+    }
+
+    // Check whether this booking holds the given seat slot
+    public boolean holdsSeat(int seatIndex) {
+        int count = seatCount();
+        for (int i = 0; i < count; i++) {
+            if (seatAt(i) == seatIndex) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Render with names resolved through the ID store
+    public String toString(IdTable ids) {
+        Showtime showtime = ids.showtime(showtimeRef());
+        return "Booking ID: " + bookingId() +
+               " | Customer: " + ids.user(userRef()).name +
+               " | Movie: " + ids.movie(movieRef()).title +
+               " | Showtime: " + showtime.showtimeId +
+               " | Seats: " + seatLabels(showtime, ", ") +
+               " | Time: " + bookingTime();
+    }
+
     @Override
     public String toString() {
-        return "Booking ID: " + bookingId + 
-               " | Customer: " + customerName + 
-               " | Movie: " + movieTitle + 
-               " | Showtime: " + showtimeId + 
-               " | Seats: " + String.join(", ", seatNumbers) + 
-               " | Time: " + bookingTime;
+        return "Booking ID: " + bookingId() +
+               " | User ref: " + userRef() +
+               " | Movie ref: " + movieRef() +
+               " | Showtime ref: " + showtimeRef() +
+               " | Seats: " + Arrays.toString(seats()) +
+               " | Time: " + bookingTime();
     }
 }
@@ -0,0 +1,216 @@
+import java.time.DayOfWeek;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Occupancy and cancellation reports over the catalog and the booking store, grouped by
+// a pluggable dimension such as movie, hour of day, weekday or seat row.
+//
+// A report runs in two passes. The first walks the catalog's seats once and gives every
+// seat of every showtime its group number, counting the seats offered per group. The
+// second scans the booking rows on the fork/join pool: each task counts its range of rows
+// into its own array of counters, looking seats up in the first pass's tables, and the
+// arrays are summed as the tasks join. The scan allocates nothing per row and needs no
+// locks, so it runs at memory speed on every core.
+//
+// Cancelled bookings are saved and loaded with their status, so cancellation figures cover
+// every booking of the showtimes in the catalog. Rows of removed showtimes are skipped.
+public class BookingAnalytics {
+    // Rows per fork/join task
+    private static final int ROWS_PER_TASK = 1 << 16;
+
+    // Counters per group, in this order
+    private static final int BOOKINGS = 0;
+    private static final int CANCELLED_BOOKINGS = 1;
+    private static final int SEATS_BOOKED = 2;
+    private static final int SEATS_CANCELLED = 3;
+    private static final int COUNTERS = 4;
+
+    // Group of a seat of a showtime. Called once per seat of the catalog, not per booking.
+    public interface Dimension {
+        String keyOf(Movie movie, Showtime showtime, int seatIndex);
+    }
+
+    // A figure computed from a group's counts
+    public interface Aggregation {
+        double apply(Group group);
+    }
+
+    public static final Dimension BY_MOVIE = (movie, showtime, seatIndex) -> movie.title;
+    public static final Dimension BY_HOUR =
+        (movie, showtime, seatIndex) -> String.format("%02d:00", showtime.dateTime.getHour());
+    public static final Dimension BY_WEEKDAY = (movie, showtime, seatIndex) -> {
+        DayOfWeek day = showtime.dateTime.getDayOfWeek();
+        // Numbered so the days sort Monday first
+        return day.getValue() + " " + day.getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+    };
+    public static final Dimension BY_SEAT_ROW = (movie, showtime, seatIndex) -> {
+        String label = showtime.seatLabel(seatIndex);
+        int end = 0;
+        while (end < label.length() && !Character.isDigit(label.charAt(end))) {
+            end++;
+        }
+        return label.substring(0, end);
+    };
+
+    public static final Aggregation OCCUPANCY =
+        group -> group.seatsOffered == 0 ? 0 : (double) group.seatsBooked / group.seatsOffered;
+    public static final Aggregation CANCELLATION_RATE = group -> {
+        long made = group.bookings + group.cancelledBookings;
+        return made == 0 ? 0 : (double) group.cancelledBookings / made;
+    };
+    public static final Aggregation BOOKINGS_COUNT = group -> group.bookings;
+    public static final Aggregation SEATS_BOOKED_COUNT = group -> group.seatsBooked;
+
+    private final List<Movie> movies;
+    private final BookingStore store;
+    private final ForkJoinPool pool;
+
+    // Constructor
+    public BookingAnalytics(List<Movie> movies, BookingStore store, ForkJoinPool pool) {
+        this.movies = movies;
+        this.store = store;
+        this.pool = pool;
+    }
+
+    // Counts per group of the given dimension, groups in key order
+    public Report report(Dimension dimension) {
+        // Pass 1: group number of every seat, per showtime reference
+        List<String> keys = new ArrayList<>();
+        Map<String, Integer> groupOfKey = new HashMap<>();
+        List<Long> offered = new ArrayList<>();
+        int[][] seatGroups = new int[0][];
+        for (Movie movie : movies) {
+            for (Showtime showtime : movie.showtimes) {
+                if (showtime.ref < 0) {
+                    continue; // not registered yet
+                }
+                if (showtime.ref >= seatGroups.length) {
+                    int[][] grown = new int[Math.max(showtime.ref + 1, seatGroups.length * 2)][];
+                    System.arraycopy(seatGroups, 0, grown, 0, seatGroups.length);
+                    seatGroups = grown;
+                }
+                int[] groups = new int[showtime.seats.size()];
+                for (int i = 0; i < groups.length; i++) {
+                    String key = dimension.keyOf(movie, showtime, i);
+                    Integer group = groupOfKey.get(key);
+                    if (group == null) {
+                        group = keys.size();
+                        groupOfKey.put(key, group);
+                        keys.add(key);
+                        offered.add(0L);
+                    }
+                    groups[i] = group;
+                    offered.set(group, offered.get(group) + 1);
+                }
+                seatGroups[showtime.ref] = groups;
+            }
+        }
+
+        // Pass 2: count the booking rows in parallel
+        long[] counts = pool.invoke(new ScanTask(seatGroups, keys.size(), 0, store.size()));
+
+        List<Group> groups = new ArrayList<>();
+        for (int g = 0; g < keys.size(); g++) {
+            int base = g * COUNTERS;
+            groups.add(new Group(keys.get(g), offered.get(g), counts[base + BOOKINGS],
+                                 counts[base + CANCELLED_BOOKINGS], counts[base + SEATS_BOOKED],
+                                 counts[base + SEATS_CANCELLED]));
+        }
+        groups.sort((a, b) -> a.key.compareTo(b.key));
+        return new Report(groups);
+    }
+
+    // Counts one range of rows, splitting it across the pool while it is large
+    private class ScanTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] seatGroups;
+        private final int groupCount;
+        private final int from;
+        private final int to;
+
+        // Constructor
+        ScanTask(int[][] seatGroups, int groupCount, int from, int to) {
+            this.seatGroups = seatGroups;
+            this.groupCount = groupCount;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > ROWS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                ScanTask left = new ScanTask(seatGroups, groupCount, from, middle);
+                left.fork();
+                long[] right = new ScanTask(seatGroups, groupCount, middle, to).compute();
+                long[] counts = left.join();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += right[i];
+                }
+                return counts;
+            }
+            long[] counts = new long[groupCount * COUNTERS];
+            for (int row = from; row < to; row++) {
+                int showtimeRef = store.showtimeRef(row);
+                int[] groups = showtimeRef < seatGroups.length ? seatGroups[showtimeRef] : null;
+                int seatCount = store.seatCount(row);
+                if (groups == null || seatCount == 0) {
+                    continue; // showtime removed or added after pass 1, or no seat to group by
+                }
+                boolean live = store.isLive(row);
+                // A booking belongs to the group of its first seat; its seats each to their own
+                counts[groups[store.seatAt(row, 0)] * COUNTERS + (live ? BOOKINGS : CANCELLED_BOOKINGS)]++;
+                for (int i = 0; i < seatCount; i++) {
+                    counts[groups[store.seatAt(row, i)] * COUNTERS + (live ? SEATS_BOOKED : SEATS_CANCELLED)]++;
+                }
+            }
+            return counts;
+        }
+    }
+
+    // Counts of one group
+    public static class Group {
+        public final String key;
+        public final long seatsOffered;
+        public final long bookings;
+        public final long cancelledBookings;
+        public final long seatsBooked;
+        public final long seatsCancelled;
+
+        // Constructor
+        public Group(String key, long seatsOffered, long bookings, long cancelledBookings,
+                     long seatsBooked, long seatsCancelled) {
+            this.key = key;
+            this.seatsOffered = seatsOffered;
+            this.bookings = bookings;
+            this.cancelledBookings = cancelledBookings;
+            this.seatsBooked = seatsBooked;
+            this.seatsCancelled = seatsCancelled;
+        }
+    }
+
+    // The groups of one report
+    public static class Report {
+        public final List<Group> groups;
+
+        // Constructor
+        public Report(List<Group> groups) {
+            this.groups = Collections.unmodifiableList(groups);
+        }
+
+        // Groups ordered by an aggregation, highest first
+        public List<Group> rankedBy(Aggregation aggregation) {
+            List<Group> ranked = new ArrayList<>(groups);
+            ranked.sort((a, b) -> Double.compare(aggregation.apply(b), aggregation.apply(a)));
+            return ranked;
+        }
+    }
+}
@@ -0,0 +1,847 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+// HTTP front end for the web box office, served from the same BookingService as the console.
+// Every request runs on its own virtual thread, so a blocked request costs a small heap
+// object rather than a platform thread. Binds to the loopback interface only.
+//
+//   GET    /movies                       movies with their showtimes
+//   GET    /movies/{movieId}/showtimes   showtimes of one movie
+//   GET    /showtimes/{showtimeId}/seats seat map, with its seat version
+//   GET    /showtimes/{showtimeId}/events  server-sent seat changes, ?from=<version> to resume
+//   GET    /showtimes/{showtimeId}/fill  seats booked at the end of each hour or day up to now
+//   GET    /bookings                     one page of bookings, optionally for a userId or
+//                                         showtimeId; limit and pageToken page through them.
+//                                         Needs that user's session, or an admin's
+//   POST   /bookings                     showtimeId, userId, seats=A1,A2 (form or query)
+//                                         or count=N instead of seats for any N free seats;
+//                                         an Idempotency-Key header or requestKey makes retries safe
+//   POST   /bookings/batch               one "showtimeId userId A1,A2" request per line;
+//                                         needs an admin session
+//   DELETE /bookings/{bookingId}         cancel a booking
+//   POST   /waitingroom/{showtimeId}     join the waiting room as userId, or the session's
+//                                         user; returns a ticket only that user can book with
+//   GET    /waitingroom/{showtimeId}/{ticket}  queue position of a ticket, given its userId
+//   GET    /admission                    admission control counters
+//   POST   /sessions                     name, password and role (default CUSTOMER); returns a
+//                                         session token for "Authorization: Bearer <token>"
+//   DELETE /sessions                     log out the session of the Authorization header
+//   GET    /trending                     most requested movies and most contested seats now
+//   GET    /rollups                      bookings, cancellations or seats per minute, hour
+//                                         or day; series, resolution, from and to select them
+//
+// With -Dcinema.execution=pipeline, every booking, any-seat, batch and cancel goes through
+// a BookingPipeline, which answers 503 while its ring stays full.
+// With -Dcinema.waitingRoom.admitsPerSecond=N, single bookings need an admitted ticket,
+// which is good for one booking attempt.
+// With -Dcinema.admission.maxInFlight=N, booking operations pass an AdmissionController.
+// A request with a session token may only book and cancel for its own user, or for anyone
+// with an ADMIN session; with -Dcinema.http.requireSession=true every booking operation
+// needs one. Listing bookings and batches always need a session.
+public class BookingHttpServer {
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    // Pending connections the OS queues before accept - sized for load tests with many clients
+    private static final int BACKLOG = 16384;
+
+    // Seat events a stream client may have outstanding before it has written them out
+    private static final int EVENT_WINDOW = 64;
+
+    private final BookingService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BookingPipeline pipeline; // null in the default lock-based mode
+    private final WaitingRoom waitingRoom;  // null when bookings are not queued
+    private final AdmissionController admission; // null when booking operations are not limited
+    private final boolean requireSession = Boolean.getBoolean("cinema.http.requireSession");
+    private volatile boolean readOnly = false;
+
+    // Constructor - port 0 picks a free port
+    public BookingHttpServer(BookingService service, int port) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.pipeline = BookingPipeline.create(service);
+        this.waitingRoom = WaitingRoom.create();
+        this.admission = AdmissionController.create();
+        server.setExecutor(executor);
+        server.createContext("/movies", this::handleMovies);
+        server.createContext("/showtimes", this::handleShowtimes);
+        server.createContext("/bookings", this::handleBookings);
+        server.createContext("/waitingroom", this::handleWaitingRoom);
+        server.createContext("/admission", this::handleAdmission);
+        server.createContext("/rollups", this::handleRollups);
+        server.createContext("/trending", this::handleTrending);
+        server.createContext("/sessions", this::handleSessions);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Stop accepting, give running requests up to delaySeconds, then release the threads
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    // Reject bookings and cancels, e.g. when serving a replica
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // ==================== Handlers ====================
+
+    private void handleMovies(HttpExchange exchange) throws IOException {
+        String[] path = pathSegments(exchange);
+        if (!exchange.getRequestMethod().equals("GET")) {
+            send(exchange, 405, error("Method not allowed"));
+        } else if (path.length == 1) {
+            StringBuilder json = new StringBuilder("[");
+            for (Movie movie : service.getMovies()) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                appendMovie(json, movie);
+            }
+            send(exchange, 200, json.append(']').toString());
+        } else if (path.length == 3 && path[2].equals("showtimes")) {
+            Movie movie = service.getIdTable().findMovie(path[1]);
+            if (movie == null) {
+                send(exchange, 404, error("Movie " + path[1] + " not found"));
+                return;
+            }
+            StringBuilder json = new StringBuilder();
+            appendShowtimes(json, movie);
+            send(exchange, 200, json.toString());
+        } else {
+            send(exchange, 404, error("Not found"));
+        }
+    }
+
+    private void handleShowtimes(HttpExchange exchange) throws IOException {
+        String[] path = pathSegments(exchange);
+        if (!exchange.getRequestMethod().equals("GET")) {
+            send(exchange, 405, error("Method not allowed"));
+        } else if (path.length == 3 && path[2].equals("seats")) {
+            Showtime showtime = service.getIdTable().findShowtime(path[1]);
+            if (showtime == null) {
+                send(exchange, 404, error("Showtime " + path[1] + " not found"));
+                return;
+            }
+            send(exchange, 200, seatMap(showtime));
+        } else if (path.length == 3 && path[2].equals("events")) {
+            streamSeatEvents(exchange, path[1]);
+        } else if (path.length == 3 && path[2].equals("fill")) {
+            fillCurve(exchange, path[1]);
+        } else {
+            send(exchange, 404, error("Not found"));
+        }
+    }
+
+    private void handleBookings(HttpExchange exchange) throws IOException {
+        String[] path = pathSegments(exchange);
+        String method = exchange.getRequestMethod();
+        if (method.equals("GET") && path.length == 1) {
+            listBookings(exchange);
+        } else if (readOnly) {
+            send(exchange, 403, error("Read-only replica - send bookings to the leader"));
+        } else if (method.equals("POST") && path.length == 1) {
+            Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+            params.putAll(parseParams(readBody(exchange)));
+
+            String showtimeId = params.get("showtimeId");
+            String userId = userIdOf(exchange, params);
+            String seats = params.get("seats");
+            String count = params.get("count");
+            String ticket = params.get("ticket");
+            String requestKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+            if (requestKey == null) {
+                requestKey = params.get("requestKey");
+            }
+            if (!authorized(exchange, userId)) {
+                return;
+            }
+            if (showtimeId == null || userId == null || (seats == null || seats.isEmpty()) && count == null) {
+                send(exchange, 400, error("showtimeId, userId and seats or count are required"));
+                return;
+            }
+            List<String> seatNumbers = seats == null ? null : seatList(seats);
+            int anyCount = 0;
+            if (seatNumbers == null) {
+                try {
+                    anyCount = Integer.parseInt(count);
+                } catch (NumberFormatException e) {
+                    send(exchange, 400, error("Invalid seat count " + count));
+                    return;
+                }
+            }
+
+            if (waitingRoom != null) {
+                long position;
+                try {
+                    position = waitingRoom.position(showtimeId, userId, ticket);
+                } catch (IllegalArgumentException e) {
+                    send(exchange, 400, error(ticket == null ? "An admitted waiting room ticket is required"
+                                                             : e.getMessage()));
+                    return;
+                }
+                if (position > 0) {
+                    send(exchange, 429, ticketStatus(showtimeId, ticket, position));
+                    return;
+                }
+            }
+
+            if (!admit(exchange, userId)) {
+                return;
+            }
+            try {
+                // The attempt spends the ticket, whatever its outcome; of concurrent
+                // attempts with one ticket only the first gets here
+                if (waitingRoom != null && !waitingRoom.redeem(showtimeId, userId, ticket)) {
+                    send(exchange, 400, error("Ticket " + ticket + " has been used or has expired"));
+                    return;
+                }
+                BookingResult result;
+                if (seatNumbers == null) {
+                    result = pipeline != null ? pipeline.bookAny(showtimeId, anyCount, userId, requestKey)
+                                              : service.bookAny(showtimeId, anyCount, userId, requestKey);
+                } else {
+                    result = pipeline != null ? pipeline.book(showtimeId, seatNumbers, userId, requestKey)
+                                              : service.book(showtimeId, seatNumbers, userId, requestKey);
+                }
+                if (result.success) {
+                    send(exchange, 201, booking(result.booking));
+                } else {
+                    send(exchange, 409, error(result.message));
+                }
+            } catch (RejectedExecutionException e) {
+                sendBusy(exchange, e.getMessage());
+            } finally {
+                release();
+            }
+        } else if (method.equals("POST") && path.length == 2 && path[1].equals("batch")) {
+            List<BookingRequest> requests = new ArrayList<>();
+            for (String line : readBody(exchange).split("\n")) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length == 3) {
+                    requests.add(new BookingRequest(parts[0], seatList(parts[2]), parts[1]));
+                } else if (!line.isBlank()) {
+                    send(exchange, 400, error("Expected \"showtimeId userId seats\" per line: " + line.trim()));
+                    return;
+                }
+            }
+
+            // A batch books for any users and holds no waiting room tickets, so it always
+            // needs an admin session, and counts against the in-flight bound only
+            if (!sessionAllows(exchange, null) || !admit(exchange, null)) {
+                return;
+            }
+            try {
+                // Per-request results, in request order
+                StringBuilder json = new StringBuilder("[");
+                List<BookingResult> results = pipeline != null ? pipeline.bookBatch(requests)
+                                                               : service.bookBatch(requests);
+                for (BookingResult result : results) {
+                    if (json.length() > 1) {
+                        json.append(',');
+                    }
+                    json.append(result.success ? booking(result.booking) : error(result.message));
+                }
+                send(exchange, 200, json.append(']').toString());
+            } finally {
+                release();
+            }
+        } else if (method.equals("DELETE") && path.length == 2) {
+            // Cancels count against the rate limit of the booking's owner
+            Booking owned = service.findBooking(path[1]);
+            User owner = owned == null ? null : service.getIdTable().user(owned.userRef());
+            String ownerId = owner == null ? null : owner.userId;
+            if (!authorized(exchange, ownerId) || !admit(exchange, ownerId)) {
+                return;
+            }
+            try {
+                BookingResult result = pipeline != null ? pipeline.cancel(path[1]) : service.cancel(path[1]);
+                if (result.success) {
+                    send(exchange, 200, "{\"cancelled\":" + quote(path[1]) + "}");
+                } else {
+                    send(exchange, 404, error(result.message));
+                }
+            } catch (RejectedExecutionException e) {
+                sendBusy(exchange, e.getMessage());
+            } finally {
+                release();
+            }
+        } else if (path.length <= 2) {
+            send(exchange, 405, error("Method not allowed"));
+        } else {
+            send(exchange, 404, error("Not found"));
+        }
+    }
+
+    private void handleWaitingRoom(HttpExchange exchange) throws IOException {
+        String[] path = pathSegments(exchange);
+        String method = exchange.getRequestMethod();
+        if (waitingRoom == null) {
+            send(exchange, 404, error("No waiting room is configured"));
+        } else if (path.length < 2 || service.getIdTable().findShowtime(path[1]) == null) {
+            send(exchange, 404, error("Showtime not found"));
+        } else if (method.equals("POST") && path.length == 2) {
+            // A ticket belongs to one user, like the bookings it leads to
+            Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+            params.putAll(parseParams(readBody(exchange)));
+            String userId = userIdOf(exchange, params);
+            if (!authorized(exchange, userId)) {
+                return;
+            }
+            if (userId == null) {
+                send(exchange, 400, error("userId is required"));
+                return;
+            }
+            String ticket = waitingRoom.join(path[1], userId);
+            send(exchange, 201, ticketStatus(path[1], ticket, waitingRoom.position(path[1], userId, ticket)));
+        } else if (method.equals("GET") && path.length == 3) {
+            String userId = userIdOf(exchange, parseParams(exchange.getRequestURI().getRawQuery()));
+            try {
+                send(exchange, 200, ticketStatus(path[1], path[2], waitingRoom.position(path[1], userId, path[2])));
+            } catch (IllegalArgumentException e) {
+                send(exchange, 404, error(e.getMessage()));
+            }
+        } else {
+            send(exchange, 405, error("Method not allowed"));
+        }
+    }
+
+    private void handleAdmission(HttpExchange exchange) throws IOException {
+        if (admission == null) {
+            send(exchange, 404, error("No admission control is configured"));
+            return;
+        }
+        send(exchange, 200, "{\"inFlight\":" + admission.inFlight() +
+                            ",\"accepted\":" + admission.acceptedCount() +
+                            ",\"shedOverloaded\":" + admission.shedOverloadedCount() +
+                            ",\"shedRateLimited\":" + admission.shedRateLimitedCount() + "}");
+    }
+
+    private void handleRollups(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            send(exchange, 405, error("Method not allowed"));
+            return;
+        }
+        Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+        try {
+            OccupancyRollups.Resolution resolution = resolution(params, "minute");
+            LocalDateTime to = params.containsKey("to")
+                ? LocalDateTime.parse(params.get("to"), formatter) : LocalDateTime.now();
+            LocalDateTime from = params.containsKey("from")
+                ? LocalDateTime.parse(params.get("from"), formatter) : bucketsBefore(to, resolution, 59);
+            OccupancyRollups rollups = service.rollups();
+            long[] counts;
+            switch (params.getOrDefault("series", "bookings")) {
+                case "bookings":
+                    counts = rollups.bookings(from, to, resolution);
+                    break;
+                case "cancellations":
+                    counts = rollups.cancellations(from, to, resolution);
+                    break;
+                case "seats":
+                    counts = rollups.seatsBooked(from, to, resolution);
+                    break;
+                default:
+                    send(exchange, 400, error("Unknown series " + params.get("series")));
+                    return;
+            }
+            send(exchange, 200, series(resolution, from, counts));
+        } catch (DateTimeParseException e) {
+            send(exchange, 400, error("Invalid time - use yyyy-MM-dd HH:mm"));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        }
+    }
+
+    private void handleSessions(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (method.equals("POST")) {
+            Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+            params.putAll(parseParams(readBody(exchange)));
+            String name = params.get("name");
+            String password = params.get("password");
+            if (name == null || password == null) {
+                send(exchange, 400, error("name and password are required"));
+                return;
+            }
+            String token = service.login(name, password, params.getOrDefault("role", "CUSTOMER"));
+            if (token == null) {
+                send(exchange, 401, error("Invalid name, password or role"));
+                return;
+            }
+            User user = service.userForSession(token);
+            send(exchange, 201, "{\"token\":" + quote(token) + ",\"userId\":" + quote(user.userId) + "}");
+        } else if (method.equals("DELETE")) {
+            String token = bearerToken(exchange);
+            if (token == null) {
+                send(exchange, 400, error("An Authorization: Bearer header is required"));
+                return;
+            }
+            service.logout(token);
+            send(exchange, 200, "{\"loggedOut\":true}");
+        } else {
+            send(exchange, 405, error("Method not allowed"));
+        }
+    }
+
+    // Check the request's session when it has one or sessions are required
+    private boolean authorized(HttpExchange exchange, String userId) throws IOException {
+        return bearerToken(exchange) == null && !requireSession || sessionAllows(exchange, userId);
+    }
+
+    // The request's session must be live and belong to userId or an admin (admins only when
+    // userId is null). Answers 401/403 and returns false otherwise.
+    private boolean sessionAllows(HttpExchange exchange, String userId) throws IOException {
+        User user = service.userForSession(bearerToken(exchange));
+        if (user == null) {
+            send(exchange, 401, error("A valid session token is required"));
+            return false;
+        }
+        if (!user.role.equals("ADMIN") && !user.userId.equals(userId)) {
+            send(exchange, 403, error("The session of " + user.userId + " may not act for "
+                                      + (userId == null ? "other users" : userId)));
+            return false;
+        }
+        return true;
+    }
+
+    // Token of an "Authorization: Bearer <token>" header, null without one
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        return header.substring(7).trim();
+    }
+
+    private void handleTrending(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            send(exchange, 405, error("Method not allowed"));
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"movies\":[");
+        boolean first = true;
+        for (Map.Entry<Movie, Long> entry : service.trendingMovies().entrySet()) {
+            json.append(first ? "" : ",").append("{\"movieId\":").append(quote(entry.getKey().movieId))
+                .append(",\"title\":").append(quote(entry.getKey().title))
+                .append(",\"seatsRequested\":").append(entry.getValue()).append('}');
+            first = false;
+        }
+        json.append("],\"seats\":[");
+        first = true;
+        for (Map.Entry<String, Long> entry : service.contestedSeats().entrySet()) {
+            String[] seat = entry.getKey().split(" ");
+            json.append(first ? "" : ",").append("{\"showtimeId\":").append(quote(seat[0]))
+                .append(",\"seat\":").append(quote(seat[1]))
+                .append(",\"attempts\":").append(entry.getValue()).append('}');
+            first = false;
+        }
+        send(exchange, 200, json.append("]}").toString());
+    }
+
+    private void fillCurve(HttpExchange exchange, String showtimeId) throws IOException {
+        Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+        try {
+            OccupancyRollups.Resolution resolution = resolution(params, "hour");
+            LocalDateTime from = params.containsKey("from")
+                ? LocalDateTime.parse(params.get("from"), formatter)
+                : bucketsBefore(LocalDateTime.now(), resolution, 47);
+            send(exchange, 200, series(resolution, from, service.fillCurve(showtimeId, from, resolution)));
+        } catch (DateTimeParseException e) {
+            send(exchange, 400, error("Invalid time - use yyyy-MM-dd HH:mm"));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        }
+    }
+
+    private static OccupancyRollups.Resolution resolution(Map<String, String> params, String fallback) {
+        String name = params.getOrDefault("resolution", fallback);
+        try {
+            return OccupancyRollups.Resolution.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown resolution " + name);
+        }
+    }
+
+    private static LocalDateTime bucketsBefore(LocalDateTime time, OccupancyRollups.Resolution resolution, int buckets) {
+        switch (resolution) {
+            case MINUTE:
+                return time.minusMinutes(buckets);
+            case HOUR:
+                return time.minusHours(buckets);
+            default:
+                return time.minusDays(buckets);
+        }
+    }
+
+    private static String series(OccupancyRollups.Resolution resolution, LocalDateTime from, long[] counts) {
+        StringBuilder json = new StringBuilder("{\"resolution\":" + quote(resolution.name().toLowerCase()) +
+                                               ",\"from\":" + quote(from.format(formatter)) + ",\"counts\":[");
+        for (int i = 0; i < counts.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(counts[i]);
+        }
+        return json.append("]}").toString();
+    }
+
+    // Admit a booking operation, or answer 429/503 and return false.
+    // Every admitted operation must be followed by release().
+    private boolean admit(HttpExchange exchange, String userId) throws IOException {
+        if (admission == null) {
+            return true;
+        }
+        switch (admission.tryAcquire(userId)) {
+            case ADMITTED:
+                return true;
+            case RATE_LIMITED:
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, error("Too many requests for user " + userId));
+                return false;
+            default:
+                sendBusy(exchange, "Server is busy - try again shortly");
+                return false;
+        }
+    }
+
+    private void sendBusy(HttpExchange exchange, String message) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        send(exchange, 503, error(message));
+    }
+
+    private void release() {
+        if (admission != null) {
+            admission.release();
+        }
+    }
+
+    // The userId parameter, or else the user of the request's session; null without either
+    private String userIdOf(HttpExchange exchange, Map<String, String> params) {
+        String userId = params.get("userId");
+        if (userId == null) {
+            User sessionUser = service.userForSession(bearerToken(exchange));
+            userId = sessionUser == null ? null : sessionUser.userId;
+        }
+        return userId;
+    }
+
+    // ==================== JSON ====================
+
+    private String ticketStatus(String showtimeId, String ticket, long position) {
+        return "{\"showtimeId\":" + quote(showtimeId) +
+               ",\"ticket\":" + quote(ticket) +
+               ",\"position\":" + position +
+               ",\"admitted\":" + (position == 0) +
+               ",\"waitMillis\":" + waitingRoom.estimatedWaitMillis(position) + "}";
+    }
+
+    private void appendMovie(StringBuilder json, Movie movie) {
+        json.append("{\"movieId\":").append(quote(movie.movieId))
+            .append(",\"title\":").append(quote(movie.title))
+            .append(",\"duration\":").append(movie.duration)
+            .append(",\"showtimes\":");
+        appendShowtimes(json, movie);
+        json.append('}');
+    }
+
+    private void appendShowtimes(StringBuilder json, Movie movie) {
+        json.append('[');
+        boolean first = true;
+        for (Showtime showtime : movie.showtimes) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"showtimeId\":").append(quote(showtime.showtimeId))
+                .append(",\"dateTime\":").append(quote(showtime.dateTime.format(formatter)))
+                .append(",\"totalSeats\":").append(showtime.totalSeats)
+                .append(",\"available\":").append(showtime.availability().freeCount())
+                .append('}');
+        }
+        json.append(']');
+    }
+
+    private String seatMap(Showtime showtime) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"showtimeId\":").append(quote(showtime.showtimeId))
+            .append(",\"totalSeats\":").append(showtime.totalSeats)
+            .append(",\"seats\":[");
+        // Read the flags under the showtime lock so the map is one consistent snapshot
+        synchronized (showtime) {
+            for (int i = 0; i < showtime.seats.size(); i++) {
+                Seat seat = showtime.seats.get(i);
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"seat\":").append(quote(seat.seatNumber))
+                    .append(",\"booked\":").append(seat.isBooked).append('}');
+            }
+            json.append("],\"version\":").append(showtime.seatVersion);
+        }
+        return json.append('}').toString();
+    }
+
+    // Stream seat changes as server-sent events until the client disconnects or the
+    // showtime is removed. The client acknowledges nothing - demand is replenished as
+    // each event is written, so a slow client only ever holds EVENT_WINDOW events.
+    private void streamSeatEvents(HttpExchange exchange, String showtimeId) throws IOException {
+        SeatEventPublisher events = service.seatEvents(showtimeId);
+        if (events == null) {
+            send(exchange, 404, error("Showtime " + showtimeId + " not found"));
+            return;
+        }
+        String from = parseParams(exchange.getRequestURI().getRawQuery()).get("from");
+        long fromVersion;
+        try {
+            fromVersion = from == null ? -1 : Long.parseLong(from);
+        } catch (NumberFormatException e) {
+            send(exchange, 400, error("Invalid version " + from));
+            return;
+        }
+
+        Object end = new Object();
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(EVENT_WINDOW + 1);
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        events.subscribe(new Flow.Subscriber<SeatEvent>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+                s.request(EVENT_WINDOW);
+            }
+
+            @Override
+            public void onNext(SeatEvent event) {
+                queue.offer(event);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                queue.offer(end);
+            }
+
+            @Override
+            public void onComplete() {
+                queue.offer(end);
+            }
+        }, fromVersion);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            Object item;
+            while ((item = queue.take()) != end) {
+                SeatEvent event = (SeatEvent) item;
+                String data = "{\"version\":" + event.version + ",\"type\":" + quote(event.type.name()) +
+                              (event.seatNumber == null ? "" : ",\"seat\":" + quote(event.seatNumber)) + "}";
+                out.write(("id: " + event.version + "\nevent: seat\ndata: " + data + "\n\n")
+                          .getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                subscription.get().request(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            Flow.Subscription s = subscription.get();
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+
+    private String booking(Booking booking) {
+        IdTable ids = service.getIdTable();
+        Showtime showtime = ids.showtime(booking.showtimeRef());
+        StringBuilder json = new StringBuilder();
+        json.append("{\"bookingId\":").append(quote(booking.bookingId()))
+            .append(",\"movieId\":").append(quote(ids.movie(booking.movieRef()).movieId))
+            .append(",\"showtimeId\":").append(quote(showtime.showtimeId))
+            .append(",\"userId\":").append(quote(ids.user(booking.userRef()).userId))
+            .append(",\"seats\":[");
+        for (int i = 0; i < booking.seatCount(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(quote(showtime.seatLabel(booking.seatAt(i))));
+        }
+        return json.append("]}").toString();
+    }
+
+    // A user's bookings for that user's session; all bookings or a showtime's for an admin's
+    private void listBookings(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+        String userId = params.get("userId");
+        if (!sessionAllows(exchange, userId)) {
+            return;
+        }
+        String pageToken = params.get("pageToken");
+        BookingPage page;
+        try {
+            int limit = Integer.parseInt(params.getOrDefault("limit", "50"));
+            if (userId != null) {
+                page = service.listBookingsForUser(userId, pageToken, limit);
+            } else if (params.containsKey("showtimeId")) {
+                page = service.listBookingsForShowtime(params.get("showtimeId"), pageToken, limit);
+            } else {
+                page = service.listBookings(pageToken, limit);
+            }
+        } catch (NumberFormatException e) {
+            send(exchange, 400, error("Invalid limit"));
+            return;
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+            return;
+        }
+
+        StringBuilder json = new StringBuilder("{\"bookings\":[");
+        for (int i = 0; i < page.bookings.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(booking(page.bookings.get(i)));
+        }
+        json.append("],\"nextPageToken\":").append(page.hasMore() ? quote(page.nextPageToken) : "null");
+        send(exchange, 200, json.append('}').toString());
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    // JSON string literal with the characters JSON requires to be escaped
+    static String quote(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    // ==================== Request helpers ====================
+
+    // Path split on '/', without the leading empty segment: /movies/M1 -> [movies, M1]
+    private static String[] pathSegments(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        while (path.endsWith("/") && path.length() > 1) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.substring(1).split("/");
+    }
+
+    // Comma-separated seat labels, upper-cased like the console does
+    private static List<String> seatList(String seats) {
+        List<String> seatNumbers = new ArrayList<>();
+        for (String seat : seats.split(",")) {
+            seatNumbers.add(seat.trim().toUpperCase());
+        }
+        return seatNumbers;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Decode name=value pairs from a query string or form body
+    private static Map<String, String> parseParams(String encoded) {
+        Map<String, String> params = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return params;
+        }
+        for (String pair : encoded.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                           URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Serve the data in the working directory: java BookingHttpServer [port]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+
+        BookingService service = new BookingService(new CinemaStorage("."));
+        service.load();
+        if (service.getMovies().isEmpty()) {
+            service.createSampleData();
+        }
+
+        BookingHttpServer server = new BookingHttpServer(service, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            service.shutdown();
+        }));
+        server.start();
+        System.out.println("Cinema booking HTTP server listening on http://localhost:" + server.getPort());
+    }
+}
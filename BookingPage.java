@@ -0,0 +1,18 @@
+import java.util.List;
+
+// One page of a booking listing. nextPageToken continues the listing right after this
+// page and is null on the last one; clients treat it as opaque.
+public class BookingPage {
+    public final List<Booking> bookings;
+    public final String nextPageToken;
+
+    // Constructor
+    public BookingPage(List<Booking> bookings, String nextPageToken) {
+        this.bookings = bookings;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public boolean hasMore() {
+        return nextPageToken != null;
+    }
+}
@@ -0,0 +1,341 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Single-writer execution mode for BookingService. Booking and cancel commands are
+// published to a preallocated ring buffer and applied by one writer thread per partition.
+// A showtime always maps to the same partition, so all of its bookings and cancels run on
+// that writer and booking threads never queue on its seat lock - even when a premiere
+// draws every request to one showtime. Readers and catalog edits (seat maps, availability,
+// seat event subscriptions, removing the showtime) still take the lock briefly from
+// their own threads.
+//
+// Publishers claim a slot with a CAS and wait on a future. The writer drains whatever is
+// published in one pass, saves once for the whole batch and then completes the futures,
+// so journaling and replies are batched. Saving bookings and cancels is left to the
+// pipeline, which turns the service's booking auto-save off - so every booking write of
+// the service, any-seat and batch bookings included, must go through the pipeline.
+// Catalog edits and new users are still saved as they happen, and shutdown saves once
+// more for anything changed beside the pipeline. When a ring stays full, publishers back
+// off and are turned away with a RejectedExecutionException rather than waiting without end.
+public class BookingPipeline {
+    private static final int MAX_BATCH = 256;
+    private static final int IDLE_SPINS = 200;
+    private static final long IDLE_PARK_NANOS = 50_000;
+    // Publishers facing a full ring spin briefly, then park for doubling intervals
+    // up to MAX_PARK_NANOS, and give up after MAX_PUBLISH_WAIT_NANOS
+    private static final int PUBLISH_SPINS = 100;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+    private static final long MAX_PUBLISH_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final BookingService service;
+    private final Partition[] partitions;
+    private volatile boolean running = true;
+
+    // Constructor - ringSize is rounded up to a power of two
+    public BookingPipeline(BookingService service, int partitionCount, int ringSize) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("Partition count must be positive");
+        }
+        this.service = service;
+        service.setAutoSaveBookings(false);
+        int size = Integer.highestOneBit(Math.max(2, ringSize) * 2 - 1);
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(size);
+            Thread writer = new Thread(partitions[i]::drain, "booking-pipeline-" + i);
+            writer.setDaemon(true);
+            partitions[i].writer = writer;
+        }
+    }
+
+    // The pipeline named by the cinema.execution system property, null for the default
+    // lock-based mode. Size is set by cinema.pipeline.partitions and cinema.pipeline.ringSize.
+    public static BookingPipeline create(BookingService service) {
+        if (!"pipeline".equalsIgnoreCase(System.getProperty("cinema.execution", "locking"))) {
+            return null;
+        }
+        int partitionCount = Integer.getInteger("cinema.pipeline.partitions",
+                                                Runtime.getRuntime().availableProcessors());
+        int ringSize = Integer.getInteger("cinema.pipeline.ringSize", 1024);
+        BookingPipeline pipeline = new BookingPipeline(service, partitionCount, ringSize);
+        pipeline.start();
+        return pipeline;
+    }
+
+    public void start() {
+        for (Partition partition : partitions) {
+            partition.writer.start();
+        }
+    }
+
+    // Stop accepting commands, apply everything already published, stop the writers and
+    // save. Publishers must have stopped first - a command racing with shutdown may never
+    // complete.
+    public void shutdown() {
+        running = false;
+        for (Partition partition : partitions) {
+            try {
+                partition.writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Booking auto-save is off while the pipeline runs - catch anything saved by no batch
+        service.save();
+    }
+
+    // ==================== Publishing ====================
+
+    public CompletableFuture<BookingResult> submitBooking(String showtimeId, List<String> seatNumbers, String userId) {
+        return submitBooking(showtimeId, seatNumbers, userId, null);
+    }
+
+    // Booking with a client request key, see BookingService.book
+    public CompletableFuture<BookingResult> submitBooking(String showtimeId, List<String> seatNumbers, String userId,
+                                                          String requestKey) {
+        Showtime showtime = service.getIdTable().findShowtime(showtimeId);
+        if (showtime == null) {
+            return CompletableFuture.completedFuture(BookingResult.failed("Showtime " + showtimeId + " not found"));
+        }
+        return publish(showtime.ref, Command.BOOK, showtimeId, seatNumbers, 0, userId, null, requestKey);
+    }
+
+    // Booking of any count free seats, see BookingService.bookAny
+    public CompletableFuture<BookingResult> submitAnyBooking(String showtimeId, int count, String userId,
+                                                             String requestKey) {
+        Showtime showtime = service.getIdTable().findShowtime(showtimeId);
+        if (showtime == null) {
+            return CompletableFuture.completedFuture(BookingResult.failed("Showtime " + showtimeId + " not found"));
+        }
+        return publish(showtime.ref, Command.BOOK_ANY, showtimeId, null, count, userId, null, requestKey);
+    }
+
+    public CompletableFuture<BookingResult> submitCancel(String bookingId) {
+        Booking booking = service.findBooking(bookingId);
+        if (booking == null) {
+            return CompletableFuture.completedFuture(BookingResult.failed("Booking " + bookingId + " not found"));
+        }
+        return publish(booking.showtimeRef(), Command.CANCEL, null, null, 0, null, bookingId, null);
+    }
+
+    // Blocking forms of the submit methods; they throw RejectedExecutionException when
+    // the partition's ring stays full
+    public BookingResult book(String showtimeId, List<String> seatNumbers, String userId) {
+        return await(submitBooking(showtimeId, seatNumbers, userId));
+    }
+
+    public BookingResult book(String showtimeId, List<String> seatNumbers, String userId, String requestKey) {
+        return await(submitBooking(showtimeId, seatNumbers, userId, requestKey));
+    }
+
+    public BookingResult bookAny(String showtimeId, int count, String userId, String requestKey) {
+        return await(submitAnyBooking(showtimeId, count, userId, requestKey));
+    }
+
+    public BookingResult cancel(String bookingId) {
+        return await(submitCancel(bookingId));
+    }
+
+    // Book many requests, see BookingService.bookBatch. Each request is published to the
+    // partition of its showtime, so the writers save the batch with the rest of their
+    // work. Results are in the order of the requests; requests published before the
+    // rings filled up still complete.
+    public List<BookingResult> bookBatch(List<BookingRequest> requests) {
+        List<CompletableFuture<BookingResult>> futures = new ArrayList<>(requests.size());
+        String rejected = null; // once a ring is full, fail the rest rather than wait for each
+        for (BookingRequest request : requests) {
+            CompletableFuture<BookingResult> future = rejected == null
+                ? submitBooking(request.showtimeId, request.seatNumbers, request.userId)
+                : CompletableFuture.completedFuture(BookingResult.failed(rejected));
+            if (future.isCompletedExceptionally()) {
+                rejected = future.exceptionNow().getMessage();
+                future = CompletableFuture.completedFuture(BookingResult.failed(rejected));
+            }
+            futures.add(future);
+        }
+        List<BookingResult> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<BookingResult> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    private static BookingResult await(CompletableFuture<BookingResult> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<BookingResult> publish(int showtimeRef, int type, String showtimeId,
+                                                     List<String> seatNumbers, int count, String userId,
+                                                     String bookingId, String requestKey) {
+        if (!running) {
+            return CompletableFuture.completedFuture(BookingResult.failed("Booking pipeline is shut down"));
+        }
+        Partition partition = partitions[showtimeRef % partitions.length];
+        CompletableFuture<BookingResult> future = new CompletableFuture<>();
+
+        // Claim the next sequence once the writer has freed its slot. A full ring means the
+        // writer is behind; publishers are often virtual threads, so after a short spin they
+        // park and free their carrier, and in the end give up rather than queue unbounded.
+        long sequence;
+        int waits = 0;
+        long parkNanos = IDLE_PARK_NANOS / 5;
+        long deadline = 0;
+        while (true) {
+            sequence = partition.claimed.get();
+            if (sequence - partition.consumed.get() >= partition.ring.length) {
+                if (++waits < PUBLISH_SPINS) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + MAX_PUBLISH_WAIT_NANOS;
+                } else if (now - deadline >= 0) {
+                    return CompletableFuture.failedFuture(
+                        new RejectedExecutionException("Booking pipeline is full - try again shortly"));
+                }
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+            } else if (partition.claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        Command command = partition.ring[(int) sequence & partition.mask];
+        command.type = type;
+        command.showtimeId = showtimeId;
+        command.seatNumbers = seatNumbers;
+        command.count = count;
+        command.userId = userId;
+        command.bookingId = bookingId;
+        command.requestKey = requestKey;
+        command.future = future;
+        command.sequence = sequence; // volatile write publishes the fields above
+        return future;
+    }
+
+    // ==================== Partitions ====================
+
+    // One ring and its writer. Slots are reused, never reallocated.
+    private class Partition {
+        final Command[] ring;
+        final int mask;
+        final AtomicLong claimed = new AtomicLong(); // next sequence a publisher will take
+        final AtomicLong consumed = new AtomicLong(); // every sequence below is applied
+        final BookingResult[] results = new BookingResult[MAX_BATCH];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final CompletableFuture<BookingResult>[] futures = new CompletableFuture[MAX_BATCH];
+        Thread writer;
+
+        Partition(int size) {
+            ring = new Command[size];
+            for (int i = 0; i < size; i++) {
+                ring[i] = new Command();
+            }
+            mask = size - 1;
+        }
+
+        // Writer loop - runs until shut down and the ring is empty
+        void drain() {
+            long next = 0;
+            int idle = 0;
+            while (true) {
+                int batch = 0;
+                boolean changed = false;
+                while (batch < MAX_BATCH) {
+                    Command command = ring[(int) (next + batch) & mask];
+                    if (command.sequence != next + batch) {
+                        break;
+                    }
+                    BookingResult result = apply(command);
+                    changed |= result.success;
+                    results[batch] = result;
+                    futures[batch] = command.future;
+                    command.clear();
+                    batch++;
+                }
+
+                if (batch == 0) {
+                    if (!running && claimed.get() == next) {
+                        return;
+                    }
+                    // Spin briefly for the next command, then back off
+                    if (++idle < IDLE_SPINS) {
+                        Thread.onSpinWait();
+                    } else {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                    continue;
+                }
+                idle = 0;
+
+                // One save for the whole batch, before any caller sees its result
+                if (changed) {
+                    service.saveCatalogAndBookings();
+                }
+                next += batch;
+                consumed.set(next);
+                for (int i = 0; i < batch; i++) {
+                    futures[i].complete(results[i]);
+                    futures[i] = null;
+                    results[i] = null;
+                }
+            }
+        }
+
+        private BookingResult apply(Command command) {
+            try {
+                if (command.type == Command.BOOK) {
+                    return service.book(command.showtimeId, command.seatNumbers, command.userId, command.requestKey);
+                }
+                if (command.type == Command.BOOK_ANY) {
+                    return service.bookAny(command.showtimeId, command.count, command.userId, command.requestKey);
+                }
+                return service.cancel(command.bookingId);
+            } catch (RuntimeException e) {
+                // Never let one bad command stop the writer
+                return BookingResult.failed("Error: " + e.getMessage());
+            }
+        }
+    }
+
+    // Preallocated ring slot
+    private static class Command {
+        static final int BOOK = 0;
+        static final int CANCEL = 1;
+        static final int BOOK_ANY = 2;
+
+        volatile long sequence = -1;
+        int type;
+        String showtimeId;
+        List<String> seatNumbers;
+        int count;
+        String userId;
+        String bookingId;
+        String requestKey;
+        CompletableFuture<BookingResult> future;
+
+        void clear() {
+            showtimeId = null;
+            seatNumbers = null;
+            userId = null;
+            bookingId = null;
+            requestKey = null;
+            future = null;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+import java.util.List;
+
+// One seat request in a batch: which showtime, which seats, for which user
+public class BookingRequest {
+    public final String showtimeId;
+    public final List<String> seatNumbers;
+    public final String userId;
+
+    // Constructor
+    public BookingRequest(String showtimeId, List<String> seatNumbers, String userId) {
+        this.showtimeId = showtimeId;
+        this.seatNumbers = seatNumbers;
+        this.userId = userId;
+    }
+
+    @Override
+    public String toString() {
+        return showtimeId + " " + seatNumbers + " for " + userId;
+    }
+}
@@ -0,0 +1,26 @@
+// Outcome of a booking or cancellation: the booking on success, a reason on failure
+public class BookingResult {
+    public final boolean success;
+    public final Booking booking;
+    public final String message;
+
+    // Constructor
+    private BookingResult(boolean success, Booking booking, String message) {
+        this.success = success;
+        this.booking = booking;
+        this.message = message;
+    }
+
+    public static BookingResult ok(Booking booking) {
+        return new BookingResult(true, booking, null);
+    }
+
+    public static BookingResult failed(String message) {
+        return new BookingResult(false, null, message);
+    }
+
+    @Override
+    public String toString() {
+        return success ? "OK " + booking.bookingId() : "FAILED " + message;
+    }
+}
@@ -0,0 +1,1326 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Headless, thread-safe booking engine. Every operation returns its result instead of
+// printing, so the console menu, load tests and other front ends all drive the same code.
+//
+// Concurrency: seat changes for a showtime happen under that showtime's monitor, so
+// bookings on different showtimes never contend. The catalog lists are copy-on-write,
+// the ID table and booking store synchronize their own writers, and file saves are
+// serialized on a separate lock. Locks held across file I/O are ReentrantLocks rather
+// than monitors, so a virtual thread waiting on a save does not pin its carrier.
+public class BookingService {
+    // "Any seat" pools per showtime - one per core
+    private static final int SEAT_POOLS = Runtime.getRuntime().availableProcessors();
+    // Client request keys are remembered for a day, up to two million of them
+    private static final long REQUEST_KEY_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int REQUEST_KEY_GENERATION = 1_000_000;
+    private static final int MAX_REQUEST_KEY_LENGTH = 128;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Trending movies and contested seats: the top 10 over the last 5 minutes, by minute
+    private static final int TRENDING_COUNT = 10;
+    private static final long TRENDING_WINDOW_MILLIS = 5 * 60 * 1000L;
+    private static final int TRENDING_PANES = 5;
+    // Sessions last 12 hours, up to 200,000 of them
+    private static final long SESSION_TTL_MILLIS = 12 * 60 * 60 * 1000L;
+    private static final int SESSION_GENERATION = 100_000;
+
+    private final CinemaStorage storage;
+    private final int partition;
+    private final int partitions;
+    private final List<Movie> movies = new CopyOnWriteArrayList<>();
+    private final List<User> users = new CopyOnWriteArrayList<>();
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+    private final SessionCache sessions = new SessionCache(SESSION_TTL_MILLIS, SESSION_GENERATION);
+    private final IdTable ids = new IdTable();
+    private final BookingStore bookings = BookingStore.create();
+    private final BookingStatistics statistics = new BookingStatistics();
+    private final OccupancyRollups rollups = new OccupancyRollups();
+    // Seats requested per movie ref, and attempts per seat keyed by seatKey
+    private final HeavyHitters movieDemand =
+        new HeavyHitters(TRENDING_COUNT, TRENDING_WINDOW_MILLIS, TRENDING_PANES);
+    private final HeavyHitters seatAttempts =
+        new HeavyHitters(TRENDING_COUNT, TRENDING_WINDOW_MILLIS, TRENDING_PANES);
+    private final DedupeCache requestKeys = new DedupeCache(REQUEST_KEY_TTL_MILLIS, REQUEST_KEY_GENERATION);
+    private final ReentrantLock storageLock = new ReentrantLock();
+    private final ReentrantLock userLock = new ReentrantLock();
+    private volatile boolean autoSave = true;
+    private volatile boolean autoSaveBookings = true; // bookings and cancels, when autoSave is on
+    private volatile ChangeListener changeListener;
+
+    // ID allocators - created in load() from the persisted high-water marks
+    private IdAllocator.MarkFile idMarks;
+    private IdAllocator movieIds;
+    private IdAllocator showtimeIds;
+    private IdAllocator bookingIds;
+    private IdAllocator userIds;
+
+    // Constructor
+    public BookingService(CinemaStorage storage) {
+        this(storage, 0, 1);
+    }
+
+    // Constructor for one partition of a sharded engine. Booking IDs are then
+    // partition + n * partitions, so the ID alone tells which partition owns a booking.
+    public BookingService(CinemaStorage storage, int partition, int partitions) {
+        this.storage = storage;
+        this.partition = partition;
+        this.partitions = partitions;
+    }
+
+    // Load existing data - bookings last, they refer to movies and users
+    public void load() {
+        for (Movie movie : storage.loadMovies()) {
+            addToCatalog(movie);
+        }
+        boolean upgraded = false;
+        for (User user : storage.loadUsers()) {
+            upgraded |= upgradePassword(user);
+            addUser(user);
+        }
+        if (upgraded) {
+            storage.saveUsers(users); // no passwords in the clear from now on
+        }
+        Map<Integer, String> keys = new HashMap<>();
+        storage.loadBookings(ids, users, bookings, keys);
+        statistics.bookingsLoaded(bookings);
+        rollups.bookingsLoaded(bookings);
+        restoreRequestKeys(keys);
+        initializeIdAllocators();
+    }
+
+    // Save every change to disk as it happens (default), or only on explicit save()
+    public void setAutoSave(boolean autoSave) {
+        this.autoSave = autoSave;
+    }
+
+    // Leave saving bookings and cancels to the caller, e.g. a pipeline that saves once per
+    // batch, while catalog edits and new users are still saved as they happen
+    public void setAutoSaveBookings(boolean autoSaveBookings) {
+        this.autoSaveBookings = autoSaveBookings;
+    }
+
+    // Receive a change record for every booking, cancel, catalog edit and new user,
+    // in the order the changes were applied. Records about one showtime are emitted
+    // under its lock, so their order matches the seat state.
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    // Persist exact high-water marks on clean shutdown
+    public void shutdown() {
+        movieIds.flush();
+        showtimeIds.flush();
+        bookingIds.flush();
+        userIds.flush();
+    }
+
+    // ==================== Bookings ====================
+
+    // Book the given seats atomically - either all of them or none
+    public BookingResult book(String showtimeId, List<String> seatNumbers, String userId) {
+        return book(showtimeId, seatNumbers, userId, null);
+    }
+
+    // Book with a client request key, so a retried request cannot book twice: a repeat of
+    // a key that already booked returns the original booking. A null key books as usual.
+    public BookingResult book(String showtimeId, List<String> seatNumbers, String userId, String requestKey) {
+        return deduplicated(requestKey, () -> bookOnce(showtimeId, seatNumbers, userId, requestKey));
+    }
+
+    private BookingResult bookOnce(String showtimeId, List<String> seatNumbers, String userId, String requestKey) {
+        Showtime showtime = ids.findShowtime(showtimeId);
+        if (showtime == null) {
+            return BookingResult.failed("Showtime " + showtimeId + " not found");
+        }
+
+        synchronized (showtime) {
+            return bookLocked(showtime, seatNumbers, userId, requestKey);
+        }
+    }
+
+    // Book many requests at once. Requests are grouped by showtime and each group is applied
+    // under one acquisition of that showtime's lock, in request order; the whole batch is
+    // saved with a single write. Results are in the order of the requests.
+    public List<BookingResult> bookBatch(List<BookingRequest> requests) {
+        BookingResult[] results = new BookingResult[requests.size()];
+
+        Map<Showtime, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            String showtimeId = requests.get(i).showtimeId;
+            Showtime showtime = ids.findShowtime(showtimeId);
+            if (showtime == null) {
+                results[i] = BookingResult.failed("Showtime " + showtimeId + " not found");
+            } else {
+                groups.computeIfAbsent(showtime, key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        boolean changed = false;
+        for (Map.Entry<Showtime, List<Integer>> group : groups.entrySet()) {
+            Showtime showtime = group.getKey();
+            synchronized (showtime) {
+                for (int i : group.getValue()) {
+                    BookingRequest request = requests.get(i);
+                    results[i] = bookLocked(showtime, request.seatNumbers, request.userId, null);
+                    changed |= results[i].success;
+                }
+            }
+        }
+
+        if (changed && autoSave && autoSaveBookings) {
+            saveCatalogAndBookings();
+        }
+        List<BookingResult> resultList = new ArrayList<>(results.length);
+        Collections.addAll(resultList, results);
+        return resultList;
+    }
+
+    // Check and reserve seats - caller holds the showtime's lock
+    private BookingResult bookLocked(Showtime showtime, List<String> seatNumbers, String userId,
+                                     String requestKey) {
+        if (ids.showtime(showtime.ref) != showtime) {
+            return BookingResult.failed("Showtime " + showtime.showtimeId + " has been removed");
+        }
+        User user = ids.findUser(userId);
+        if (user == null) {
+            return BookingResult.failed("User " + userId + " not found");
+        }
+        if (seatNumbers == null || seatNumbers.isEmpty()) {
+            return BookingResult.failed("No seats requested");
+        }
+
+        // Resolve and check every seat before reserving any
+        int[] seats = new int[seatNumbers.size()];
+        for (int i = 0; i < seats.length; i++) {
+            String seatNumber = seatNumbers.get(i);
+            int seatIndex = showtime.indexOfSeat(seatNumber);
+            if (seatIndex < 0) {
+                return BookingResult.failed("Seat " + seatNumber + " not found");
+            }
+            if (showtime.seats.get(seatIndex).isBooked) {
+                movieDemand.add(ids.movieOf(showtime.ref), seatNumbers.size());
+                seatAttempts.add(seatKey(showtime.ref, seatIndex), 1);
+                return BookingResult.failed("Seat " + seatNumber + " is not available");
+            }
+            if (contains(seats, i, seatIndex)) {
+                return BookingResult.failed("Seat " + seatNumber + " is not available");
+            }
+            seats[i] = seatIndex;
+        }
+        return reserveLocked(showtime, seats, user, requestKey);
+    }
+
+    // Reserve checked seats and record the booking - caller holds the showtime's lock
+    private BookingResult reserveLocked(Showtime showtime, int[] seats, User user, String requestKey) {
+        for (int seatIndex : seats) {
+            showtime.reserveSeatAt(seatIndex);
+        }
+        Booking booking = bookings.append(nextBookingId(), ids.movieOf(showtime.ref), showtime.ref,
+                                          user.ref, seats, LocalDateTime.now());
+        statistics.booked(booking.movieRef(), showtime.ref, seats.length);
+        rollups.booked(showtime.ref, seats.length, bookings.bookedAt(booking.row()));
+        movieDemand.add(booking.movieRef(), seats.length);
+        for (int seatIndex : seats) {
+            seatAttempts.add(seatKey(showtime.ref, seatIndex), 1);
+        }
+        emit("BOOK|" + CinemaStorage.formatBooking(ids, booking, requestKey));
+        return BookingResult.ok(booking);
+    }
+
+    // Book any count free seats of a showtime, for sales where customers do not pick seats.
+    // Seats come from the showtime's SeatPool, so concurrent callers are handed different
+    // seats and only meet briefly on the showtime lock to record the booking; once the
+    // pools are empty further requests fail without taking the lock at all.
+    public BookingResult bookAny(String showtimeId, int count, String userId) {
+        return bookAny(showtimeId, count, userId, null);
+    }
+
+    // "Any seat" booking with a client request key, see book
+    public BookingResult bookAny(String showtimeId, int count, String userId, String requestKey) {
+        return deduplicated(requestKey, () -> bookAnyOnce(showtimeId, count, userId, requestKey));
+    }
+
+    private BookingResult bookAnyOnce(String showtimeId, int count, String userId, String requestKey) {
+        Showtime showtime = ids.findShowtime(showtimeId);
+        if (showtime == null) {
+            return BookingResult.failed("Showtime " + showtimeId + " not found");
+        }
+        if (count <= 0) {
+            return BookingResult.failed("No seats requested");
+        }
+        User user = ids.findUser(userId);
+        if (user == null) {
+            return BookingResult.failed("User " + userId + " not found");
+        }
+
+        SeatPool pool = seatPool(showtime);
+        int[] seats = new int[count];
+        for (int i = 0; i < count; i++) {
+            seats[i] = pool.claim();
+            if (seats[i] < 0) {
+                for (int j = 0; j < i; j++) {
+                    pool.release(seats[j]);
+                }
+                movieDemand.add(ids.movieOf(showtime.ref), count);
+                return BookingResult.failed("Not enough seats available");
+            }
+        }
+
+        synchronized (showtime) {
+            if (ids.showtime(showtime.ref) != showtime) {
+                return BookingResult.failed("Showtime " + showtime.showtimeId + " has been removed");
+            }
+            // Replace seats that were booked by number after the pool was built
+            boolean enough = true;
+            for (int i = 0; i < count && enough; i++) {
+                while (showtime.seats.get(seats[i]).isBooked || contains(seats, i, seats[i])) {
+                    seats[i] = pool.claim();
+                    if (seats[i] < 0) {
+                        enough = false;
+                        break;
+                    }
+                }
+            }
+            if (!enough) {
+                for (int j = 0; j < count; j++) {
+                    if (seats[j] >= 0 && !showtime.seats.get(seats[j]).isBooked && !contains(seats, j, seats[j])) {
+                        pool.release(seats[j]);
+                    }
+                }
+                movieDemand.add(ids.movieOf(showtime.ref), count);
+                return BookingResult.failed("Not enough seats available");
+            }
+            return reserveLocked(showtime, seats, user, requestKey);
+        }
+    }
+
+    // Run a booking at most once per request key, then save it. Concurrent repeats wait for
+    // the first attempt; if it failed, the key is released and a repeat runs as a new attempt.
+    private BookingResult deduplicated(String requestKey, Supplier<BookingResult> booking) {
+        DedupeCache.Entry claim = null;
+        if (requestKey != null) {
+            claim = new DedupeCache.Entry(System.currentTimeMillis());
+            BookingResult earlier = claimRequestKey(requestKey, claim);
+            if (earlier != null) {
+                return earlier;
+            }
+        }
+
+        BookingResult result = null;
+        try {
+            result = booking.get();
+        } finally {
+            // Settle the key before saving, so the save includes it
+            if (claim != null && result != null && result.success) {
+                requestKeys.complete(claim, result.booking.id());
+            } else if (claim != null) {
+                requestKeys.abandon(requestKey, claim);
+            }
+        }
+        if (result.success && autoSave && autoSaveBookings) {
+            saveCatalogAndBookings();
+        }
+        return result;
+    }
+
+    // Claim a request key for a new attempt. Returns null if the attempt should run,
+    // otherwise the result to answer with.
+    private BookingResult claimRequestKey(String requestKey, DedupeCache.Entry claim) {
+        if (requestKey.isEmpty() || requestKey.length() > MAX_REQUEST_KEY_LENGTH ||
+            requestKey.indexOf('|') >= 0 || requestKey.indexOf('\n') >= 0 || requestKey.indexOf('\r') >= 0) {
+            return BookingResult.failed("Invalid request key");
+        }
+
+        DedupeCache.Entry earlier;
+        while ((earlier = requestKeys.claim(requestKey, claim)) != null) {
+            long bookingId = earlier.bookingId();
+            if (bookingId >= 0) {
+                Booking original = bookings.find(bookingId);
+                if (original == null) {
+                    return BookingResult.failed("Request " + requestKey + " already made booking " +
+                                                Booking.formatId(bookingId) + ", which has been cancelled");
+                }
+                return BookingResult.ok(original);
+            }
+        }
+        return null;
+    }
+
+    // Put loaded or replicated request keys back in the dedupe cache, at their booking times.
+    // Keys are by row, as the keys of cancelled bookings are kept too.
+    private void restoreRequestKeys(Map<Integer, String> keys) {
+        for (Map.Entry<Integer, String> entry : keys.entrySet()) {
+            Booking booking = new Booking(bookings, entry.getKey());
+            long bookedAt = booking.bookingTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            requestKeys.restore(entry.getValue(), booking.id(), bookedAt);
+        }
+    }
+
+    // The showtime's seat pool, built from its free seats on first use
+    private SeatPool seatPool(Showtime showtime) {
+        SeatPool pool = showtime.seatPool;
+        if (pool == null) {
+            synchronized (showtime) {
+                pool = showtime.seatPool;
+                if (pool == null) {
+                    List<Integer> freeSeats = new ArrayList<>();
+                    for (int i = 0; i < showtime.seats.size(); i++) {
+                        if (!showtime.seats.get(i).isBooked) {
+                            freeSeats.add(i);
+                        }
+                    }
+                    pool = new SeatPool(freeSeats, SEAT_POOLS);
+                    showtime.seatPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    // Cancel a booking and release its seats
+    public BookingResult cancel(String bookingId) {
+        Booking booking = findBooking(bookingId);
+        if (booking == null) {
+            return BookingResult.failed("Booking " + bookingId + " not found");
+        }
+        Showtime showtime = ids.showtime(booking.showtimeRef());
+        if (showtime == null) {
+            return BookingResult.failed("Booking " + bookingId + " not found");
+        }
+
+        synchronized (showtime) {
+            // Another caller may have cancelled it while we waited for the lock
+            if (!bookings.isLive(booking.row())) {
+                return BookingResult.failed("Booking " + bookingId + " not found");
+            }
+            for (int i = 0; i < booking.seatCount(); i++) {
+                showtime.cancelSeatAt(booking.seatAt(i));
+                if (showtime.seatPool != null) {
+                    showtime.seatPool.release(booking.seatAt(i));
+                }
+            }
+            bookings.remove(booking.row());
+            statistics.cancelled(booking.movieRef(), showtime.ref, booking.seatCount());
+            rollups.cancelled(showtime.ref, booking.seatCount(), OccupancyRollups.epochSecond(LocalDateTime.now()));
+            emit("CANCEL|" + booking.bookingId());
+        }
+
+        if (autoSave && autoSaveBookings) {
+            saveCatalogAndBookings();
+        }
+        return BookingResult.ok(booking);
+    }
+
+    // Free seats of a showtime, null if it does not exist
+    public Availability availability(String showtimeId) {
+        Showtime showtime = ids.findShowtime(showtimeId);
+        if (showtime == null) {
+            return null;
+        }
+        return showtime.availability();
+    }
+
+    // Live seat changes of a showtime, null if it does not exist. Clients fetch the
+    // availability once and then subscribe from its version.
+    public SeatEventPublisher seatEvents(String showtimeId) {
+        Showtime showtime = ids.findShowtime(showtimeId);
+        if (showtime == null) {
+            return null;
+        }
+        synchronized (showtime) {
+            if (showtime.seatEvents == null) {
+                showtime.seatEvents = new SeatEventPublisher(showtime, ForkJoinPool.commonPool());
+            }
+            return showtime.seatEvents;
+        }
+    }
+
+    // Complete the event stream of a removed showtime - caller holds its lock
+    private static void closeSeatEvents(Showtime showtime) {
+        if (showtime.seatEvents != null) {
+            showtime.seatEvents.close();
+        }
+    }
+
+    // Live booking by external ID, null if there is none
+    public Booking findBooking(String bookingId) {
+        long id = Booking.parseId(bookingId);
+        return id < 0 ? null : bookings.find(id);
+    }
+
+    // Live bookings of one user, in booking order
+    public List<Booking> bookingsForUser(String userId) {
+        List<Booking> userBookings = new ArrayList<>();
+        User user = ids.findUser(userId);
+        if (user == null) {
+            return userBookings;
+        }
+        for (int row = bookings.nextLiveRowOfUser(user.ref, -1); row >= 0;
+             row = bookings.nextLiveRowOfUser(user.ref, row)) {
+            userBookings.add(new Booking(bookings, row));
+        }
+        return userBookings;
+    }
+
+    // ==================== Paged listings ====================
+    // Pages follow booking order. A page token records where its page ended, so fetching
+    // a later page costs the same as the first. pageToken is null for the first page.
+
+    public BookingPage listBookings(String pageToken, int pageSize) {
+        return page('A', 0, pageToken, pageSize);
+    }
+
+    public BookingPage listBookingsForUser(String userId, String pageToken, int pageSize) {
+        User user = ids.findUser(userId);
+        if (user == null) {
+            return new BookingPage(new ArrayList<>(), null);
+        }
+        return page('U', user.ref, pageToken, pageSize);
+    }
+
+    public BookingPage listBookingsForShowtime(String showtimeId, String pageToken, int pageSize) {
+        Showtime showtime = ids.findShowtime(showtimeId);
+        if (showtime == null) {
+            return new BookingPage(new ArrayList<>(), null);
+        }
+        return page('S', showtime.ref, pageToken, pageSize);
+    }
+
+    // One page of a listing: 'A' all bookings, 'U' one user's, 'S' one showtime's
+    private BookingPage page(char listing, int ref, String pageToken, int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        int row = pageToken == null ? -1 : resumeRow(listing, ref, pageToken);
+        List<Booking> page = new ArrayList<>(pageSize);
+        while (page.size() < pageSize && (row = nextRow(listing, ref, row)) >= 0) {
+            page.add(new Booking(bookings, row));
+        }
+        String nextPageToken = null;
+        if (row >= 0 && nextRow(listing, ref, row) >= 0) {
+            String position = listing + "|" + ref + "|" + row + "|" + bookings.id(row);
+            nextPageToken = Base64.getUrlEncoder().withoutPadding()
+                                  .encodeToString(position.getBytes(StandardCharsets.UTF_8));
+        }
+        return new BookingPage(page, nextPageToken);
+    }
+
+    private int nextRow(char listing, int ref, int after) {
+        switch (listing) {
+            case 'U':
+                return bookings.nextLiveRowOfUser(ref, after);
+            case 'S':
+                return bookings.nextLiveRowOfShowtime(ref, after);
+            default:
+                return bookings.nextLiveRow(after);
+        }
+    }
+
+    // Row a page token ended at. The row number is checked against the booking ID, which
+    // is found again by ID if the rows were renumbered by a reload. Tokens are not secret,
+    // so the row must also be in the listing - a user's listing resumed from another user's
+    // row would carry on down that user's bookings.
+    private int resumeRow(char listing, int ref, String pageToken) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8).split("\\|");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+        if (parts.length != 4 || parts[0].length() != 1 || parts[0].charAt(0) != listing ||
+            !parts[1].equals(String.valueOf(ref))) {
+            throw new IllegalArgumentException("Page token belongs to a different listing");
+        }
+        int row;
+        long id;
+        try {
+            row = Integer.parseInt(parts[2]);
+            id = Long.parseLong(parts[3]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+        if (row < 0 || row >= bookings.size() || bookings.id(row) != id) {
+            row = bookings.rowOf(id);
+            if (row < 0) {
+                throw new IllegalArgumentException("Page token has expired - start the listing again");
+            }
+        }
+        if (!inListing(listing, ref, row)) {
+            throw new IllegalArgumentException("Page token belongs to a different listing");
+        }
+        return row;
+    }
+
+    private boolean inListing(char listing, int ref, int row) {
+        switch (listing) {
+            case 'U':
+                return bookings.userRef(row) == ref;
+            case 'S':
+                return bookings.showtimeRef(row) == ref;
+            default:
+                return true;
+        }
+    }
+
+    // ==================== Catalog ====================
+
+    public Movie addMovie(String title, int duration) {
+        return addMovie(generateMovieId(), title, duration);
+    }
+
+    // Add a movie under an ID allocated by the caller
+    public Movie addMovie(String movieId, String title, int duration) {
+        if (title == null || title.trim().isEmpty()) {
+            throw new IllegalArgumentException("Title cannot be empty");
+        }
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Duration must be a positive number");
+        }
+        if (ids.findMovie(movieId) != null) {
+            throw new IllegalArgumentException("Movie " + movieId + " already exists");
+        }
+        Movie movie = new Movie(movieId, title.trim(), duration);
+        addToCatalog(movie);
+        emitMovie(movie);
+        if (autoSave) {
+            saveMovies();
+        }
+        return movie;
+    }
+
+    // Add a showtime with seats named prefix + 1..totalSeats
+    public Showtime addShowtime(String movieId, LocalDateTime dateTime, int totalSeats, String seatPrefix) {
+        return addShowtime(generateShowtimeId(), movieId, dateTime, totalSeats, seatPrefix);
+    }
+
+    // Add a showtime under an ID allocated by the caller
+    public Showtime addShowtime(String showtimeId, String movieId, LocalDateTime dateTime,
+                                int totalSeats, String seatPrefix) {
+        if (ids.findShowtime(showtimeId) != null) {
+            throw new IllegalArgumentException("Showtime " + showtimeId + " already exists");
+        }
+        Movie movie = ids.findMovie(movieId);
+        if (movie == null) {
+            throw new IllegalArgumentException("Movie " + movieId + " not found");
+        }
+        if (dateTime.isBefore(LocalDateTime.now())) {
+            throw new IllegalArgumentException("Showtime must be in the future");
+        }
+        if (totalSeats <= 0 || totalSeats > 100) {
+            throw new IllegalArgumentException("Number of seats must be between 1 and 100");
+        }
+        Showtime showtime = new Showtime(showtimeId, dateTime, totalSeats);
+        for (int i = 1; i <= totalSeats; i++) {
+            showtime.seats.add(new Seat(seatPrefix + i));
+        }
+        // Register before publishing in the movie's list so readers can always resolve it
+        synchronized (showtime) {
+            ids.add(showtime, movie);
+            movie.showtimes.add(showtime);
+            statistics.showtimeAdded(showtime.ref);
+            emitShowtime(movie, showtime);
+        }
+        if (autoSave) {
+            saveMovies();
+        }
+        return showtime;
+    }
+
+    // Remove a movie with its showtimes and bookings, returns the number of bookings removed
+    public int removeMovie(String movieId) {
+        Movie movie = ids.findMovie(movieId);
+        // Of concurrent removes of the movie or one of its showtimes, one gets each entity
+        List<Showtime> showtimes = movie == null ? null : ids.remove(movie);
+        if (showtimes == null) {
+            throw new IllegalArgumentException("Movie " + movieId + " not found");
+        }
+        movies.remove(movie);
+        // Bookings go under each showtime's lock, so no booking or cancel is half done
+        int removed = 0;
+        for (Showtime showtime : showtimes) {
+            synchronized (showtime) {
+                closeSeatEvents(showtime);
+                removed += bookings.removeByShowtime(showtime.ref);
+                statistics.showtimeRemoved(movie.ref, showtime.ref);
+                rollups.showtimeRemoved(showtime.ref);
+            }
+        }
+        statistics.movieRemoved(movie.ref);
+        emit("REMOVE_MOVIE|" + movieId);
+        if (autoSave) {
+            saveCatalogAndBookings();
+        }
+        return removed;
+    }
+
+    // Remove a showtime with its bookings, returns the number of bookings removed
+    public int removeShowtime(String showtimeId) {
+        Showtime showtime = ids.findShowtime(showtimeId);
+        if (showtime == null) {
+            throw new IllegalArgumentException("Showtime " + showtimeId + " not found");
+        }
+        int removed;
+        synchronized (showtime) {
+            // A concurrent remove of the showtime or its movie may have got here first
+            if (!ids.remove(showtime)) {
+                throw new IllegalArgumentException("Showtime " + showtimeId + " not found");
+            }
+            closeSeatEvents(showtime);
+            Movie movie = ids.movie(ids.movieOf(showtime.ref));
+            if (movie != null) {
+                movie.showtimes.remove(showtime);
+            }
+            removed = bookings.removeByShowtime(showtime.ref);
+            statistics.showtimeRemoved(ids.movieOf(showtime.ref), showtime.ref);
+            rollups.showtimeRemoved(showtime.ref);
+            emit("REMOVE_SHOWTIME|" + showtimeId);
+        }
+        if (autoSave) {
+            saveCatalogAndBookings();
+        }
+        return removed;
+    }
+
+    // Delete all movies and bookings, then recreate the sample catalog
+    public void clearAllData() {
+        storageLock.lock();
+        try {
+            storage.clearCatalog();
+        } finally {
+            storageLock.unlock();
+        }
+        clearCatalog();
+        emit("CLEAR");
+        createSampleData();
+    }
+
+    // Drop all movies, showtimes and bookings from memory
+    private void clearCatalog() {
+        for (Movie movie : movies) {
+            for (Showtime showtime : movie.showtimes) {
+                synchronized (showtime) {
+                    ids.remove(showtime);
+                    closeSeatEvents(showtime);
+                }
+            }
+            ids.remove(movie);
+        }
+        movies.clear();
+        bookings.clear();
+        statistics.clear();
+        rollups.clear();
+        movieDemand.clear();
+        seatAttempts.clear();
+        requestKeys.clear();
+    }
+
+    // Create sample data for testing
+    public void createSampleData() {
+        // Create movies
+        Movie movie1 = new Movie(generateMovieId(), "Inception", 148);
+        Movie movie2 = new Movie(generateMovieId(), "The Dark Knight", 152);
+        Movie movie3 = new Movie(generateMovieId(), "Interstellar", 169);
+
+        // Create showtimes for movie1
+        Showtime showtime1 = new Showtime(
+            generateShowtimeId(),
+            LocalDateTime.now().plusDays(1).withHour(14).withMinute(0),
+            20
+        );
+
+        Showtime showtime2 = new Showtime(
+            generateShowtimeId(),
+            LocalDateTime.now().plusDays(1).withHour(18).withMinute(30),
+            20
+        );
+
+        // Add seats to showtimes
+        for (int i = 1; i <= 20; i++) {
+            showtime1.seats.add(new Seat("A" + i));
+            showtime2.seats.add(new Seat("A" + i));
+        }
+
+        movie1.showtimes.add(showtime1);
+        movie1.showtimes.add(showtime2);
+
+        // Create showtimes for movie2
+        Showtime showtime3 = new Showtime(
+            generateShowtimeId(),
+            LocalDateTime.now().plusDays(1).withHour(17).withMinute(30),
+            20
+        );
+
+        Showtime showtime3b = new Showtime(
+            generateShowtimeId(),
+            LocalDateTime.now().plusDays(2).withHour(15).withMinute(0),
+            20
+        );
+
+        for (int i = 1; i <= 20; i++) {
+            showtime3.seats.add(new Seat("B" + i));
+            showtime3b.seats.add(new Seat("B" + i));
+        }
+
+        movie2.showtimes.add(showtime3);
+        movie2.showtimes.add(showtime3b);
+
+        // Create showtimes for movie3
+        Showtime showtime4 = new Showtime(
+            generateShowtimeId(),
+            LocalDateTime.now().plusDays(3).withHour(19).withMinute(0),
+            20
+        );
+
+        for (int i = 1; i <= 20; i++) {
+            showtime4.seats.add(new Seat("C" + i));
+        }
+
+        movie3.showtimes.add(showtime4);
+
+        // Add movies to list
+        addToCatalog(movie1);
+        addToCatalog(movie2);
+        addToCatalog(movie3);
+        emitMovie(movie1);
+        emitMovie(movie2);
+        emitMovie(movie3);
+
+        // Save to storage
+        saveMovies();
+    }
+
+    // Add a movie and its showtimes to the ID table, then publish it in the catalog
+    private void addToCatalog(Movie movie) {
+        ids.add(movie);
+        for (Showtime showtime : movie.showtimes) {
+            ids.add(showtime, movie);
+        }
+        movies.add(movie);
+        statistics.movieAdded(movie);
+    }
+
+    // ==================== Users ====================
+
+    // Register a new user, null if the name is already taken
+    public User registerUser(String name, String password, String role) {
+        return registerUser(null, name, password, role);
+    }
+
+    // Register under an ID allocated by the caller, or a new one if userId is null.
+    // Only a salted hash of the password is kept.
+    public User registerUser(String userId, String name, String password, String role) {
+        if (findUserByName(name) != null) {
+            return null;
+        }
+        String passwordHash = PasswordHasher.hash(password); // slow - outside the lock
+        return registerHashedUser(userId, name, passwordHash, role);
+    }
+
+    // Register with a password already hashed by PasswordHasher, e.g. once for every partition
+    public User registerHashedUser(String userId, String name, String passwordHash, String role) {
+        userLock.lock();
+        try {
+            if (findUserByName(name) != null) {
+                return null;
+            }
+            User user = new User(userId != null ? userId : generateUserId(), name, passwordHash, role, "", "");
+            addUser(user);
+            emit("USER|" + CinemaStorage.formatUser(user));
+            if (autoSave) {
+                storage.saveUsers(users);
+            }
+            return user;
+        } finally {
+            userLock.unlock();
+        }
+    }
+
+    // Check credentials, the matching user or null. This runs the slow password hash.
+    public User authenticate(String name, String password, String role) {
+        User user = usersByName.get(name);
+        if (user == null) {
+            PasswordHasher.verifyDecoy(password);
+            return null;
+        }
+        if (!PasswordHasher.verify(password, user.password) || !user.role.equals(role)) {
+            return null;
+        }
+        return user;
+    }
+
+    // Check credentials once and start a session; the token or null
+    public String login(String name, String password, String role) {
+        User user = authenticate(name, password, role);
+        return user == null ? null : sessions.create(user);
+    }
+
+    // User of a session token, null if it is unknown or expired. A map lookup, no hashing.
+    public User userForSession(String token) {
+        return sessions.validate(token);
+    }
+
+    public void logout(String token) {
+        sessions.invalidate(token);
+    }
+
+    public User findUserByName(String name) {
+        return usersByName.get(name);
+    }
+
+    private void addUser(User user) {
+        ids.add(user);
+        users.add(user);
+        usersByName.put(user.name, user);
+    }
+
+    // Replace a password stored in the clear by data from before hashing with its hash
+    private static boolean upgradePassword(User user) {
+        if (PasswordHasher.isHash(user.password)) {
+            return false;
+        }
+        user.password = PasswordHasher.hash(user.password);
+        return true;
+    }
+
+    // ==================== Replication ====================
+
+    private void emit(String record) {
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onChange(record);
+        }
+    }
+
+    // A movie record followed by one record per showtime
+    private void emitMovie(Movie movie) {
+        emit("MOVIE|" + movie.movieId + "|" + movie.title + "|" + movie.duration);
+        for (Showtime showtime : movie.showtimes) {
+            emitShowtime(movie, showtime);
+        }
+    }
+
+    private void emitShowtime(Movie movie, Showtime showtime) {
+        StringBuilder labels = new StringBuilder();
+        for (Seat seat : showtime.seats) {
+            if (labels.length() > 0) {
+                labels.append(',');
+            }
+            labels.append(seat.seatNumber);
+        }
+        emit("SHOWTIME|" + movie.movieId + "|" + showtime.showtimeId + "|" +
+             CinemaStorage.formatTime(showtime.dateTime) + "|" + showtime.totalSeats + "|" + labels);
+    }
+
+    // Apply a change record from another instance. Records already reflected in the state
+    // (from a snapshot taken while they were in flight) are skipped, so replay is idempotent.
+    // Seat flags follow the bookings, see reconcileSeats.
+    public void applyChange(String record) {
+        String[] parts = record.split("\\|");
+        switch (parts[0]) {
+            case "BOOK":
+                applyBooking(parts);
+                break;
+            case "CANCEL":
+                Booking cancelled = findBooking(parts[1]);
+                Showtime showtime = cancelled == null ? null : ids.showtime(cancelled.showtimeRef());
+                if (showtime != null) {
+                    cancel(parts[1]);
+                    synchronized (showtime) {
+                        reconcileSeats(showtime);
+                    }
+                }
+                break;
+            case "MOVIE":
+                if (ids.findMovie(parts[1]) == null) {
+                    addToCatalog(new Movie(parts[1], parts[2], Integer.parseInt(parts[3])));
+                }
+                break;
+            case "SHOWTIME":
+                applyShowtime(parts);
+                break;
+            case "REMOVE_MOVIE":
+                if (ids.findMovie(parts[1]) != null) {
+                    removeMovie(parts[1]);
+                }
+                break;
+            case "REMOVE_SHOWTIME":
+                if (ids.findShowtime(parts[1]) != null) {
+                    removeShowtime(parts[1]);
+                }
+                break;
+            case "USER":
+                User user = CinemaStorage.parseUser(record.substring("USER|".length()));
+                if (user != null && ids.findUser(user.userId) == null) {
+                    upgradePassword(user);
+                    addUser(user);
+                }
+                break;
+            case "CLEAR":
+                clearCatalog();
+                break;
+            default:
+                System.err.println("Error applying change: unknown record " + parts[0]);
+        }
+    }
+
+    // BOOK|bookingId|userId|movieId|showtimeId|seats|time[|request key] - the source already checked
+    // the seats, so they are taken as given
+    private void applyBooking(String[] parts) {
+        long id = Booking.parseId(parts[1]);
+        Showtime showtime = ids.findShowtime(parts[4]);
+        if (id < 0 || showtime == null) {
+            System.err.println("Error applying change: cannot resolve booking " + parts[1]);
+            return;
+        }
+        synchronized (showtime) {
+            if (bookings.rowOf(id) >= 0) {
+                return; // already applied, or already cancelled
+            }
+            String[] line = new String[parts.length - 1];
+            System.arraycopy(parts, 1, line, 0, line.length);
+            int row = CinemaStorage.parseBooking(line, ids, users, bookings);
+            if (row >= 0) {
+                Booking booking = new Booking(bookings, row);
+                for (int i = 0; i < booking.seatCount(); i++) {
+                    Seat seat = showtime.seats.get(booking.seatAt(i));
+                    if (!seat.isBooked) {
+                        showtime.reserveSeatAt(booking.seatAt(i));
+                    }
+                }
+                statistics.booked(booking.movieRef(), showtime.ref, booking.seatCount());
+                rollups.booked(showtime.ref, booking.seatCount(), bookings.bookedAt(booking.row()));
+                if (line.length == 7) {
+                    Map<Integer, String> keys = new HashMap<>();
+                    keys.put(row, line[6]);
+                    restoreRequestKeys(keys);
+                }
+            }
+        }
+    }
+
+    // SHOWTIME|movieId|showtimeId|dateTime|totalSeats|seat labels
+    private void applyShowtime(String[] parts) {
+        Movie movie = ids.findMovie(parts[1]);
+        if (movie == null) {
+            System.err.println("Error applying change: unknown movie " + parts[1]);
+            return;
+        }
+        if (ids.findShowtime(parts[2]) != null) {
+            return;
+        }
+        Showtime showtime = new Showtime(parts[2], CinemaStorage.parseTime(parts[3]), Integer.parseInt(parts[4]));
+        if (parts.length > 5) {
+            for (String label : parts[5].split(",")) {
+                showtime.seats.add(new Seat(label));
+            }
+        }
+        synchronized (showtime) {
+            ids.add(showtime, movie);
+            movie.showtimes.add(showtime);
+            statistics.showtimeAdded(showtime.ref);
+        }
+    }
+
+    // Set a showtime's seat flags from its live bookings - caller holds the showtime's lock.
+    // A snapshot is written while bookings change, so its seat flags and bookings can
+    // disagree: a booking made or cancelled between the two passes shows in one and not
+    // the other, and replay skips it as already applied. Bookings are what replay keeps
+    // right, so the seat map is derived from them.
+    private void reconcileSeats(Showtime showtime) {
+        boolean[] held = new boolean[showtime.seats.size()];
+        for (int row = bookings.nextLiveRowOfShowtime(showtime.ref, -1); row >= 0;
+             row = bookings.nextLiveRowOfShowtime(showtime.ref, row)) {
+            for (int i = 0; i < bookings.seatCount(row); i++) {
+                held[bookings.seatAt(row, i)] = true;
+            }
+        }
+        for (int seat = 0; seat < held.length; seat++) {
+            if (held[seat] && !showtime.seats.get(seat).isBooked) {
+                showtime.reserveSeatAt(seat);
+            } else if (!held[seat] && showtime.seats.get(seat).isBooked) {
+                showtime.cancelSeatAt(seat);
+            }
+        }
+        showtime.seatPool = null; // rebuilt from the seat flags on the next any-seat booking
+    }
+
+    // Write movies, users and bookings as one snapshot in the storage file formats. Nothing
+    // is locked across the sections, so the snapshot holds every change made before it
+    // started and possibly some made while it was written; loadSnapshot and applyChange
+    // make replay from the offset read before it started come out right either way.
+    public void writeSnapshot(BufferedWriter writer) throws IOException {
+        writer.write("MOVIES");
+        writer.newLine();
+        CinemaStorage.writeMovies(writer, movies);
+        writer.write("USERS");
+        writer.newLine();
+        for (User user : users) {
+            writer.write(CinemaStorage.formatUser(user));
+            writer.newLine();
+        }
+        writer.write("BOOKINGS");
+        writer.newLine();
+        CinemaStorage.writeBookings(writer, ids, bookings, requestKeys.keysByBooking());
+        writer.write("END");
+        writer.newLine();
+    }
+
+    // Replace the in-memory state with a snapshot from writeSnapshot
+    public void loadSnapshot(BufferedReader reader) throws IOException {
+        clearCatalog();
+        users.clear();
+        usersByName.clear();
+        sessions.clear();
+        ids.clear();
+
+        List<Movie> snapshotMovies = new ArrayList<>();
+        CinemaStorage.readMovies(new BufferedReader(new StringReader(readSection(reader, "MOVIES", "USERS"))),
+                                 snapshotMovies);
+        for (Movie movie : snapshotMovies) {
+            addToCatalog(movie);
+        }
+        for (String line : readSection(reader, null, "BOOKINGS").split("\n")) {
+            User user = CinemaStorage.parseUser(line);
+            if (user != null) {
+                upgradePassword(user);
+                addUser(user);
+            }
+        }
+        Map<Integer, String> keys = new HashMap<>();
+        CinemaStorage.readBookings(new BufferedReader(new StringReader(readSection(reader, null, "END"))),
+                                   ids, users, bookings, keys);
+        for (Movie movie : movies) {
+            for (Showtime showtime : movie.showtimes) {
+                synchronized (showtime) {
+                    reconcileSeats(showtime);
+                }
+            }
+        }
+        statistics.bookingsLoaded(bookings);
+        rollups.bookingsLoaded(bookings);
+        restoreRequestKeys(keys);
+    }
+
+    // Lines up to the end marker, after checking for the start marker if one is given
+    private static String readSection(BufferedReader reader, String start, String end) throws IOException {
+        if (start != null && !start.equals(reader.readLine())) {
+            throw new IOException("Malformed snapshot: expected " + start);
+        }
+        StringBuilder section = new StringBuilder();
+        String line;
+        while (!end.equals(line = reader.readLine())) {
+            if (line == null) {
+                throw new IOException("Malformed snapshot: expected " + end);
+            }
+            section.append(line).append('\n');
+        }
+        return section.toString();
+    }
+
+    // ==================== Storage ====================
+
+    // Save everything now, regardless of auto-save
+    public void save() {
+        saveCatalogAndBookings();
+        userLock.lock();
+        try {
+            storage.saveUsers(users);
+        } finally {
+            userLock.unlock();
+        }
+    }
+
+    private void saveMovies() {
+        storageLock.lock();
+        try {
+            storage.saveMovies(movies);
+        } finally {
+            storageLock.unlock();
+        }
+    }
+
+    // Save seat state and bookings - lets callers with auto-save off write once per batch
+    public void saveCatalogAndBookings() {
+        storageLock.lock();
+        try {
+            storage.saveMovies(movies);
+            storage.saveBookings(ids, bookings, requestKeys.keysByBooking());
+        } finally {
+            storageLock.unlock();
+        }
+    }
+
+    // Set up ID allocators from the high-water marks in ids.txt
+    private void initializeIdAllocators() {
+        idMarks = storage.idMarks();
+        if (!idMarks.exists()) {
+            // First start with this version - derive the marks from existing data once
+            initializeCountersFromData();
+        }
+
+        // Catalog and user edits are rare, so they take one ID at a time and keep IDs dense.
+        // Bookings take per-thread blocks and lease ranges ahead to avoid a write per booking.
+        movieIds = new IdAllocator("MOVIE", 1, 0, idMarks);
+        showtimeIds = new IdAllocator("SHOWTIME", 1, 0, idMarks);
+        bookingIds = new IdAllocator("BOOKING", 64, 1 << 16, idMarks);
+        userIds = new IdAllocator("USER", 1, 0, idMarks);
+
+        // The store tracks its largest ID for free - guards against a stale marks file
+        bookingIds.advancePast(bookings.maxId() / partitions);
+    }
+
+    // Initialize counters based on existing data
+    private void initializeCountersFromData() {
+        int maxMovieCount = 0;
+        int maxShowtimeCount = 0;
+
+        // Parse movie IDs to find the maximum counter value
+        for (Movie movie : movies) {
+            maxMovieCount = Math.max(maxMovieCount, parseCounter(movie.movieId, "M"));
+
+            // Parse showtime IDs
+            for (Showtime showtime : movie.showtimes) {
+                maxShowtimeCount = Math.max(maxShowtimeCount, parseCounter(showtime.showtimeId, "S"));
+            }
+        }
+
+        // Parse user IDs
+        int maxUserCount = 0;
+        for (User user : users) {
+            maxUserCount = Math.max(maxUserCount, parseCounter(user.userId, "U"));
+        }
+
+        // Marks are the next value to hand out
+        idMarks.put("MOVIE", maxMovieCount + 1);
+        idMarks.put("SHOWTIME", maxShowtimeCount + 1);
+        idMarks.put("BOOKING", bookings.maxId() / partitions + 1);
+        idMarks.put("USER", maxUserCount + 1);
+    }
+
+    // Numeric part of an ID like "M12", 0 if it does not parse
+    static int parseCounter(String id, String prefix) {
+        if (id.startsWith(prefix)) {
+            try {
+                return Integer.parseInt(id.substring(prefix.length()));
+            } catch (NumberFormatException e) {
+                // Skip if parsing fails
+            }
+        }
+        return 0;
+    }
+
+    // ID generation methods - safe to call from any thread
+    private String generateMovieId() {
+        return "M" + movieIds.next();
+    }
+
+    private String generateShowtimeId() {
+        return "S" + showtimeIds.next();
+    }
+
+    private String generateUserId() {
+        return "U" + userIds.next();
+    }
+
+    private long nextBookingId() {
+        return bookingIds.next() * partitions + partition;
+    }
+
+    // Check whether the first n entries of seats contain seatIndex
+    private static boolean contains(int[] seats, int n, int seatIndex) {
+        for (int i = 0; i < n; i++) {
+            if (seats[i] == seatIndex) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ==================== Read access ====================
+
+    public List<Movie> getMovies() {
+        return Collections.unmodifiableList(movies);
+    }
+
+    public List<User> getUsers() {
+        return Collections.unmodifiableList(users);
+    }
+
+    public IdTable getIdTable() {
+        return ids;
+    }
+
+    public BookingStore getBookings() {
+        return bookings;
+    }
+
+    public BookingStatistics statistics() {
+        return statistics;
+    }
+
+    public OccupancyRollups rollups() {
+        return rollups;
+    }
+
+    // Seats booked in a showtime at the end of each bucket from from up to now
+    public long[] fillCurve(String showtimeId, LocalDateTime from, OccupancyRollups.Resolution resolution) {
+        Showtime showtime = ids.findShowtime(showtimeId);
+        if (showtime == null) {
+            throw new IllegalArgumentException("Showtime " + showtimeId + " not found");
+        }
+        long bookedNow = statistics.forShowtime(showtime.ref).seats();
+        return rollups.fillCurve(showtime.ref, bookedNow, from, resolution);
+    }
+
+    // Movies with the most seats requested in the last few minutes, booked or not, most first
+    public Map<Movie, Long> trendingMovies() {
+        Map<Movie, Long> trending = new LinkedHashMap<>();
+        for (HeavyHitters.Hitter hitter : movieDemand.top()) {
+            Movie movie = ids.movie((int) hitter.key);
+            if (movie != null) {
+                trending.put(movie, hitter.count);
+            }
+        }
+        return trending;
+    }
+
+    // Seats tried most often in the last few minutes, successfully or not, as
+    // "showtimeId seat" with the number of attempts, most first
+    public Map<String, Long> contestedSeats() {
+        Map<String, Long> contested = new LinkedHashMap<>();
+        for (HeavyHitters.Hitter hitter : seatAttempts.top()) {
+            Showtime showtime = ids.showtime((int) (hitter.key >>> 32));
+            if (showtime != null) {
+                contested.put(showtime.showtimeId + " " + showtime.seatLabel((int) hitter.key), hitter.count);
+            }
+        }
+        return contested;
+    }
+
+    private static long seatKey(int showtimeRef, int seatIndex) {
+        return (long) showtimeRef << 32 | seatIndex;
+    }
+
+    // Reports over the current catalog and bookings, run on the common fork/join pool
+    public BookingAnalytics analytics() {
+        return new BookingAnalytics(movies, bookings, ForkJoinPool.commonPool());
+    }
+}
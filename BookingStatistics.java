@@ -0,0 +1,137 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running totals for the statistics screen. BookingService updates them as bookings,
+// cancels and catalog edits happen, so reading them is O(1) instead of a scan over every
+// booking. Counters are LongAdders, so booking threads on different showtimes add to
+// them without contending; a read is a sum over a few cells and may lag a change that
+// is still in progress.
+public class BookingStatistics {
+    private final LongAdder movies = new LongAdder();
+    private final LongAdder showtimes = new LongAdder();
+    private final LongAdder bookings = new LongAdder();
+    private final LongAdder seatsBooked = new LongAdder();
+    private final Map<Integer, Totals> byMovie = new ConcurrentHashMap<>();
+    private final Map<Integer, Totals> byShowtime = new ConcurrentHashMap<>();
+
+    public long movieCount() {
+        return movies.sum();
+    }
+
+    public long showtimeCount() {
+        return showtimes.sum();
+    }
+
+    public long bookingCount() {
+        return bookings.sum();
+    }
+
+    public long seatsBooked() {
+        return seatsBooked.sum();
+    }
+
+    // Totals of one movie or showtime by ID table reference, zeros if it has none
+    public Totals forMovie(int movieRef) {
+        Totals totals = byMovie.get(movieRef);
+        return totals == null ? Totals.NONE : totals;
+    }
+
+    public Totals forShowtime(int showtimeRef) {
+        Totals totals = byShowtime.get(showtimeRef);
+        return totals == null ? Totals.NONE : totals;
+    }
+
+    // ==================== Updates ====================
+
+    // A movie entered the catalog with its current showtimes
+    void movieAdded(Movie movie) {
+        movies.increment();
+        byMovie.put(movie.ref, new Totals());
+        for (Showtime showtime : movie.showtimes) {
+            showtimeAdded(showtime.ref);
+        }
+    }
+
+    void showtimeAdded(int showtimeRef) {
+        showtimes.increment();
+        byShowtime.put(showtimeRef, new Totals());
+    }
+
+    // A movie left the catalog. Its showtimes are removed one by one with showtimeRemoved,
+    // by this remove or a concurrent one, so each showtime's bookings are taken off once.
+    void movieRemoved(int movieRef) {
+        byMovie.remove(movieRef);
+        movies.decrement();
+    }
+
+    // A showtime left the catalog with its bookings
+    void showtimeRemoved(int movieRef, int showtimeRef) {
+        Totals totals = byShowtime.remove(showtimeRef);
+        if (totals != null) {
+            long removedBookings = totals.bookings();
+            long removedSeats = totals.seats();
+            bookings.add(-removedBookings);
+            seatsBooked.add(-removedSeats);
+            forMovie(movieRef).add(-removedBookings, -removedSeats);
+        }
+        showtimes.decrement();
+    }
+
+    void booked(int movieRef, int showtimeRef, int seats) {
+        bookings.increment();
+        seatsBooked.add(seats);
+        forMovie(movieRef).add(1, seats);
+        forShowtime(showtimeRef).add(1, seats);
+    }
+
+    void cancelled(int movieRef, int showtimeRef, int seats) {
+        bookings.decrement();
+        seatsBooked.add(-seats);
+        forMovie(movieRef).add(-1, -seats);
+        forShowtime(showtimeRef).add(-1, -seats);
+    }
+
+    // Count every live booking of a freshly loaded store
+    void bookingsLoaded(BookingStore store) {
+        int rows = store.size();
+        for (int row = 0; row < rows; row++) {
+            if (store.isLive(row)) {
+                booked(store.movieRef(row), store.showtimeRef(row), store.seatCount(row));
+            }
+        }
+    }
+
+    void clear() {
+        movies.reset();
+        showtimes.reset();
+        bookings.reset();
+        seatsBooked.reset();
+        byMovie.clear();
+        byShowtime.clear();
+    }
+
+    // Live bookings and booked seats of one movie or showtime
+    public static class Totals {
+        static final Totals NONE = new Totals();
+
+        private final LongAdder bookings = new LongAdder();
+        private final LongAdder seats = new LongAdder();
+
+        public long bookings() {
+            return bookings.sum();
+        }
+
+        public long seats() {
+            return seats.sum();
+        }
+
+        void add(long bookingDelta, long seatDelta) {
+            if (this == NONE) {
+                return; // the movie or showtime is gone
+            }
+            bookings.add(bookingDelta);
+            seats.add(seatDelta);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Fixed-width booking rows addressed by row number. Booking objects are flyweight
+// views over a row. Cancelled rows are marked dead rather than moved, so row numbers
+// stay stable; dead rows are saved as CANCELLED lines and come back dead on load, so a
+// cancelled booking keeps its ID and request key across restarts.
+//
+// Implementations keep the rows on the heap (BookingTable) or off it (OffHeapBookingStore).
+// Writers synchronize on the store; readers rely on size being published last.
+//
+// Rows of the same user, and of the same showtime, are also chained in insertion order:
+// each row holds the next row of its user and of its showtime, and the store keeps the
+// first and last row per reference. Listing one customer's or one showtime's bookings
+// follows its chain instead of scanning every row.
+public abstract class BookingStore implements Iterable<Booking> {
+    // Chain ends per user and showtime reference, -1 when there is no row yet
+    private int[] firstOfUser = emptyEnds(64);
+    private int[] lastOfUser = emptyEnds(64);
+    private int[] firstOfShowtime = emptyEnds(64);
+    private int[] lastOfShowtime = emptyEnds(64);
+
+    // Pick the store named by the cinema.bookingStore system property ("heap" or "offheap")
+    public static BookingStore create() {
+        if ("offheap".equalsIgnoreCase(System.getProperty("cinema.bookingStore", "heap"))) {
+            return new OffHeapBookingStore();
+        }
+        return new BookingTable();
+    }
+
+    // Append a booking and return a view over its row
+    public abstract Booking append(long id, int movieRef, int showtimeRef, int userRef,
+                                   int[] seats, LocalDateTime bookingTime);
+
+    // Mark a row as cancelled
+    public abstract void remove(int row);
+
+    public abstract void clear();
+
+    // Row of a booking, live or cancelled, -1 if there is none. IDs are never reused, so
+    // a cancelled booking keeps its row.
+    public abstract int rowOf(long id);
+
+    // Number of rows ever appended, including cancelled ones
+    public abstract int size();
+
+    public abstract int liveCount();
+
+    public abstract long maxId();
+
+    // Column accessors used by views and scans
+    public abstract boolean isLive(int row);
+
+    public abstract long id(int row);
+
+    public abstract int movieRef(int row);
+
+    public abstract int showtimeRef(int row);
+
+    public abstract int userRef(int row);
+
+    public abstract long bookedAt(int row); // epoch seconds of the booking's local time
+
+    public abstract int seatCount(int row);
+
+    public abstract int seatAt(int row, int i);
+
+    // Next row of the same user or showtime, -1 at the end of the chain
+    public abstract int nextOfUser(int row);
+
+    public abstract int nextOfShowtime(int row);
+
+    protected abstract void setNextOfUser(int row, int next);
+
+    protected abstract void setNextOfShowtime(int row, int next);
+
+    // Add a new row to its user and showtime chains - called by append before size is published
+    protected void link(int row, int userRef, int showtimeRef) {
+        setNextOfUser(row, -1);
+        setNextOfShowtime(row, -1);
+        if (userRef >= firstOfUser.length) {
+            firstOfUser = growEnds(firstOfUser, userRef);
+            lastOfUser = growEnds(lastOfUser, userRef);
+        }
+        if (showtimeRef >= firstOfShowtime.length) {
+            firstOfShowtime = growEnds(firstOfShowtime, showtimeRef);
+            lastOfShowtime = growEnds(lastOfShowtime, showtimeRef);
+        }
+        if (lastOfUser[userRef] < 0) {
+            firstOfUser[userRef] = row;
+        } else {
+            setNextOfUser(lastOfUser[userRef], row);
+        }
+        lastOfUser[userRef] = row;
+        if (lastOfShowtime[showtimeRef] < 0) {
+            firstOfShowtime[showtimeRef] = row;
+        } else {
+            setNextOfShowtime(lastOfShowtime[showtimeRef], row);
+        }
+        lastOfShowtime[showtimeRef] = row;
+    }
+
+    // Forget every chain - called by clear
+    protected void unlinkAll() {
+        Arrays.fill(firstOfUser, -1);
+        Arrays.fill(lastOfUser, -1);
+        Arrays.fill(firstOfShowtime, -1);
+        Arrays.fill(lastOfShowtime, -1);
+    }
+
+    // ==================== Row scans for paging ====================
+    // Each returns the first live row after the given one (-1 to start from the beginning),
+    // or -1 when there are no more. Reading size first makes the rows below it visible.
+
+    public int nextLiveRow(int after) {
+        int rows = size();
+        for (int row = after + 1; row < rows; row++) {
+            if (isLive(row)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    // after must be -1 or a row of this user
+    public int nextLiveRowOfUser(int userRef, int after) {
+        int rows = size();
+        int row;
+        if (after >= 0) {
+            row = nextOfUser(after);
+        } else {
+            int[] first = firstOfUser;
+            row = userRef < first.length ? first[userRef] : -1;
+        }
+        while (row >= 0 && row < rows && !isLive(row)) {
+            row = nextOfUser(row);
+        }
+        return row < rows ? row : -1;
+    }
+
+    // after must be -1 or a row of this showtime
+    public int nextLiveRowOfShowtime(int showtimeRef, int after) {
+        int rows = size();
+        int row;
+        if (after >= 0) {
+            row = nextOfShowtime(after);
+        } else {
+            int[] first = firstOfShowtime;
+            row = showtimeRef < first.length ? first[showtimeRef] : -1;
+        }
+        while (row >= 0 && row < rows && !isLive(row)) {
+            row = nextOfShowtime(row);
+        }
+        return row < rows ? row : -1;
+    }
+
+    private static int[] emptyEnds(int length) {
+        int[] ends = new int[length];
+        Arrays.fill(ends, -1);
+        return ends;
+    }
+
+    private static int[] growEnds(int[] ends, int ref) {
+        int[] grown = emptyEnds(Math.max(ref + 1, ends.length * 2));
+        System.arraycopy(ends, 0, grown, 0, ends.length);
+        return grown;
+    }
+
+    public boolean isEmpty() {
+        return liveCount() == 0;
+    }
+
+    // Find a live booking by numeric ID, null if there is none
+    public Booking find(long id) {
+        int row = rowOf(id);
+        return row < 0 || !isLive(row) ? null : new Booking(this, row);
+    }
+
+    // Remove every live booking for a showtime, returns the number removed
+    public synchronized int removeByShowtime(int showtimeRef) {
+        int rows = size();
+        int removed = 0;
+        for (int row = 0; row < rows; row++) {
+            if (isLive(row) && showtimeRef(row) == showtimeRef) {
+                remove(row);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // Total seats over all live bookings - one sequential pass
+    public int totalSeatsBooked() {
+        int rows = size();
+        int total = 0;
+        for (int row = 0; row < rows; row++) {
+            if (isLive(row)) {
+                total += seatCount(row);
+            }
+        }
+        return total;
+    }
+
+    // Iterate over live rows in insertion order
+    @Override
+    public Iterator<Booking> iterator() {
+        final int rows = size();
+        return new Iterator<Booking>() {
+            private int next = advance(0);
+
+            private int advance(int row) {
+                while (row < rows && !isLive(row)) {
+                    row++;
+                }
+                return row;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public Booking next() {
+                if (next >= rows) {
+                    throw new NoSuchElementException();
+                }
+                Booking booking = new Booking(BookingStore.this, next);
+                next = advance(next + 1);
+                return booking;
+            }
+        };
+    }
+}
@@ -0,0 +1,188 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+// Columnar in-memory booking store: one primitive array per field, one row per booking.
+public class BookingTable extends BookingStore {
+    private long[] ids = new long[64];
+    private int[] movieRefs = new int[64];
+    private int[] showtimeRefs = new int[64];
+    private int[] userRefs = new int[64];
+    private long[] bookedAt = new long[64];
+    private int[] seatStart = new int[64];  // offset into seatPool
+    private int[] seatCount = new int[64];
+    private boolean[] live = new boolean[64];
+    private int[] nextOfUser = new int[64];
+    private int[] nextOfShowtime = new int[64];
+    private int[] seatPool = new int[256];
+    private int seatPoolSize = 0;
+
+    // Rows are written before size is published, so readers see complete rows
+    private volatile int size = 0;
+    private int liveCount = 0;
+    private long maxId = 0;
+    private final LongIntMap rowById = new LongIntMap(64);
+
+    @Override
+    public synchronized Booking append(long id, int movieRef, int showtimeRef, int userRef,
+                                       int[] seats, LocalDateTime bookingTime) {
+        if (rowById.get(id) >= 0) {
+            throw new IllegalStateException("Duplicate booking ID: " + Booking.formatId(id));
+        }
+        int row = size;
+        ensureRowCapacity(row + 1);
+        ensureSeatCapacity(seatPoolSize + seats.length);
+
+        ids[row] = id;
+        movieRefs[row] = movieRef;
+        showtimeRefs[row] = showtimeRef;
+        userRefs[row] = userRef;
+        bookedAt[row] = bookingTime.toEpochSecond(ZoneOffset.UTC);
+        seatStart[row] = seatPoolSize;
+        seatCount[row] = seats.length;
+        live[row] = true;
+        System.arraycopy(seats, 0, seatPool, seatPoolSize, seats.length);
+        seatPoolSize += seats.length;
+        link(row, userRef, showtimeRef);
+
+        rowById.put(id, row);
+        liveCount++;
+        maxId = Math.max(maxId, id);
+        size = row + 1;
+        return new Booking(this, row);
+    }
+
+    @Override
+    public synchronized void remove(int row) {
+        if (live[row]) {
+            live[row] = false;
+            liveCount--;
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        size = 0;
+        seatPoolSize = 0;
+        liveCount = 0;
+        maxId = 0;
+        rowById.clear();
+        unlinkAll();
+    }
+
+    @Override
+    public synchronized int rowOf(long id) {
+        return rowById.get(id);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int liveCount() {
+        return liveCount;
+    }
+
+    @Override
+    public long maxId() {
+        return maxId;
+    }
+
+    // Same result as the generic scan, but reads only the two columns involved
+    @Override
+    public int totalSeatsBooked() {
+        int rows = size;
+        int total = 0;
+        for (int row = 0; row < rows; row++) {
+            if (live[row]) {
+                total += seatCount[row];
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public boolean isLive(int row) {
+        return live[row];
+    }
+
+    @Override
+    public long id(int row) {
+        return ids[row];
+    }
+
+    @Override
+    public int movieRef(int row) {
+        return movieRefs[row];
+    }
+
+    @Override
+    public int showtimeRef(int row) {
+        return showtimeRefs[row];
+    }
+
+    @Override
+    public int userRef(int row) {
+        return userRefs[row];
+    }
+
+    @Override
+    public long bookedAt(int row) {
+        return bookedAt[row];
+    }
+
+    @Override
+    public int seatCount(int row) {
+        return seatCount[row];
+    }
+
+    @Override
+    public int seatAt(int row, int i) {
+        return seatPool[seatStart[row] + i];
+    }
+
+    @Override
+    public int nextOfUser(int row) {
+        return nextOfUser[row];
+    }
+
+    @Override
+    public int nextOfShowtime(int row) {
+        return nextOfShowtime[row];
+    }
+
+    @Override
+    protected void setNextOfUser(int row, int next) {
+        nextOfUser[row] = next;
+    }
+
+    @Override
+    protected void setNextOfShowtime(int row, int next) {
+        nextOfShowtime[row] = next;
+    }
+
+    private void ensureRowCapacity(int rows) {
+        if (rows <= ids.length) {
+            return;
+        }
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        movieRefs = Arrays.copyOf(movieRefs, capacity);
+        showtimeRefs = Arrays.copyOf(showtimeRefs, capacity);
+        userRefs = Arrays.copyOf(userRefs, capacity);
+        bookedAt = Arrays.copyOf(bookedAt, capacity);
+        seatStart = Arrays.copyOf(seatStart, capacity);
+        seatCount = Arrays.copyOf(seatCount, capacity);
+        live = Arrays.copyOf(live, capacity);
+        nextOfUser = Arrays.copyOf(nextOfUser, capacity);
+        nextOfShowtime = Arrays.copyOf(nextOfShowtime, capacity);
+    }
+
+    private void ensureSeatCapacity(int seats) {
+        if (seats > seatPool.length) {
+            seatPool = Arrays.copyOf(seatPool, Math.max(seats, seatPool.length * 2));
+        }
+    }
+}
@@ -0,0 +1,4 @@
+// Receives the change records a BookingService emits, one line of text per change
+public interface ChangeListener {
+    void onChange(String record);
+}
@@ -1,34 +1,27 @@
-import java.io.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
+// Console front end. All booking logic lives in BookingService; this class only
+// reads input, calls the service and prints the results.
 public class CinemaBookingSystem {
+    private static final int PAGE_SIZE = 20; // bookings listed before asking to show more
+
+    private final BookingService service;
     private List<Movie> movies;
-    private List<Booking> bookings;
-    private List<User> users;
+    private IdTable ids;
     private User currentUser;
     private Scanner scanner;
-    
-    // Simple ID counters
-    private int movieCounter = 0;
-    private int showtimeCounter = 0;
-    private int bookingCounter = 0;
-    private int userCounter = 0;
-    
-    // File paths
-    private static final String BOOKINGS_FILE = "bookings.txt";
-    private static final String MOVIES_FILE = "movies.txt";
-    private static final String USERS_FILE = "users.txt";
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-    // Constructor
+    // Constructor - data files live in the working directory
     public CinemaBookingSystem() {
-        this.movies = new ArrayList<>();
-        this.bookings = new ArrayList<>();
-        this.users = new ArrayList<>();
+        this.service = new BookingService(new CinemaStorage("."));
+        this.movies = service.getMovies();
+        this.ids = service.getIdTable();
         this.currentUser = null;
         this.scanner = new Scanner(System.in);
     }
@@ -39,178 +32,13 @@ public class CinemaBookingSystem {
         System.out.println("   Cinema Ticket Booking System");
         System.out.println("========================================\n");
 
-        // Load existing data
-        loadMovies();
-        loadBookings();
-        loadUsers();
+        service.load();
 
         // If no movies exist, create sample data
         if (movies.isEmpty()) {
             System.out.println("Creating sample data...\n");
-            createSampleData();
-        } else {
-            // Initialize counters from existing data
-            initializeCountersFromData();
-        }
-    }
-    
-    // Initialize counters based on existing data
-    private void initializeCountersFromData() {
-        int maxMovieCount = 0;
-        int maxShowtimeCount = 0;
-        int maxBookingCount = 0;
-        
-        // Parse movie IDs to find the maximum counter value
-        for (Movie movie : movies) {
-            String movieId = movie.movieId;
-            if (movieId.startsWith("M")) {
-                try {
-                    int count = Integer.parseInt(movieId.substring(1));
-                    maxMovieCount = Math.max(maxMovieCount, count);
-                } catch (NumberFormatException e) {
-                    // Skip if parsing fails
-                }
-            }
-            
-            // Parse showtime IDs
-            for (Showtime showtime : movie.showtimes) {
-                String showtimeId = showtime.showtimeId;
-                if (showtimeId.startsWith("S")) {
-                    try {
-                        int count = Integer.parseInt(showtimeId.substring(1));
-                        maxShowtimeCount = Math.max(maxShowtimeCount, count);
-                    } catch (NumberFormatException e) {
-                        // Skip if parsing fails
-                    }
-                }
-            }
-        }
-        
-        // Parse booking IDs
-        for (Booking booking : bookings) {
-            String bookingId = booking.bookingId;
-            if (bookingId.startsWith("B")) {
-                try {
-                    int count = Integer.parseInt(bookingId.substring(1));
-                    maxBookingCount = Math.max(maxBookingCount, count);
-                } catch (NumberFormatException e) {
-                    // Skip if parsing fails
-                }
-            }
-        }
-        
-        // Parse user IDs
-        int maxUserCount = 0;
-        for (User user : users) {
-            String userId = user.userId;
-            if (userId.startsWith("U")) {
-                try {
-                    int count = Integer.parseInt(userId.substring(1));
-                    maxUserCount = Math.max(maxUserCount, count);
-                } catch (NumberFormatException e) {
-                    // Skip if parsing fails
-                }
-            }
+            service.createSampleData();
         }
-        
-        // Set counters to the maximum values found
-        movieCounter = maxMovieCount;
-        showtimeCounter = maxShowtimeCount;
-        bookingCounter = maxBookingCount;
-        userCounter = maxUserCount;
-    }
-
-    // Create sample data for testing
-    private void createSampleData() {
-        // Create movies
-        Movie movie1 = new Movie(generateMovieId(), "Inception", 148);
-        Movie movie2 = new Movie(generateMovieId(), "The Dark Knight", 152);
-        Movie movie3 = new Movie(generateMovieId(), "Interstellar", 169);
-
-        // Create showtimes for movie1
-        Showtime showtime1 = new Showtime(
-            generateShowtimeId(),
-            LocalDateTime.now().plusDays(1).withHour(14).withMinute(0),
-            20
-        );
-        
-        Showtime showtime2 = new Showtime(
-            generateShowtimeId(),
-            LocalDateTime.now().plusDays(1).withHour(18).withMinute(30),
-            20
-        );
-
-        // Add seats to showtimes
-        for (int i = 1; i <= 20; i++) {
-            showtime1.seats.add(new Seat("A" + i));
-            showtime2.seats.add(new Seat("A" + i));
-        }
-
-        movie1.showtimes.add(showtime1);
-        movie1.showtimes.add(showtime2);
-
-        // Create showtimes for movie2
-        Showtime showtime3 = new Showtime(
-            generateShowtimeId(),
-            LocalDateTime.now().plusDays(1).withHour(17).withMinute(30),
-            20
-        );
-        
-        Showtime showtime3b = new Showtime(
-            generateShowtimeId(),
-            LocalDateTime.now().plusDays(2).withHour(15).withMinute(0),
-            20
-        );
-
-        for (int i = 1; i <= 20; i++) {
-            showtime3.seats.add(new Seat("B" + i));
-            showtime3b.seats.add(new Seat("B" + i));
-        }
-
-        movie2.showtimes.add(showtime3);
-        movie2.showtimes.add(showtime3b);
-
-        // Create showtimes for movie3
-        Showtime showtime4 = new Showtime(
-            generateShowtimeId(),
-            LocalDateTime.now().plusDays(3).withHour(19).withMinute(0),
-            20
-        );
-
-        for (int i = 1; i <= 20; i++) {
-            showtime4.seats.add(new Seat("C" + i));
-        }
-
-        movie3.showtimes.add(showtime4);
-
-        // Add movies to list
-        movies.add(movie1);
-        movies.add(movie2);
-        movies.add(movie3);
-
-        // Save to storage
-        saveMovies();
-    }
-    
-    // Simple ID generation methods
-    private String generateMovieId() {
-        movieCounter++;
-        return "M" + movieCounter;
-    }
-    
-    private String generateShowtimeId() {
-        showtimeCounter++;
-        return "S" + showtimeCounter;
-    }
-    
-    private String generateBookingId() {
-        bookingCounter++;
-        return "B" + bookingCounter;
-    }
-    
-    private String generateUserId() {
-        userCounter++;
-        return "U" + userCounter;
     }
 
     // Main menu
@@ -233,6 +61,7 @@ public class CinemaBookingSystem {
                 System.out.println("6. Remove Movie");
                 System.out.println("7. Remove Showtime");
                 System.out.println("8. Clear All Data");
+                System.out.println("10. View Analytics");
                 System.out.println("9. Exit");
             } else {
                 // Customer menu
@@ -278,6 +107,9 @@ public class CinemaBookingSystem {
                         case 9:
                             exit();
                             return;
+                        case 10:
+                            viewAnalytics();
+                            break;
                         default:
                             System.out.println("Invalid choice. Please try again.");
                     }
@@ -333,7 +165,7 @@ public class CinemaBookingSystem {
             for (int j = 0; j < showtimes.size(); j++) {
                 Showtime showtime = showtimes.get(j);
                 System.out.println("   " + (j + 1) + ". " + showtime.dateTime.format(formatter) +
-                    " (Available: " + showtime.getAvailableSeats().size() + "/" + showtime.totalSeats + ")");
+                    " (Available: " + showtime.availability().freeCount() + "/" + showtime.totalSeats + ")");
             }
         }
     }
@@ -375,66 +207,46 @@ public class CinemaBookingSystem {
 
             // Display available seats
             System.out.println("\nAvailable Seats:");
-            List<Seat> availableSeats = selectedShowtime.getAvailableSeats();
+            Availability availability = selectedShowtime.availability();
 
-            if (availableSeats.isEmpty()) {
+            if (availability.freeCount() == 0) {
                 System.out.println("No seats available for this showtime.");
                 return;
             }
 
-            for (int i = 0; i < availableSeats.size(); i++) {
-                System.out.print(availableSeats.get(i).seatNumber + " ");
-                if ((i + 1) % 10 == 0) {
-                    System.out.println();
-                }
-            }
+            System.out.print(availability.seatGrid);
 
             System.out.print("\n\nEnter number of seats to book: ");
             int numSeats = Integer.parseInt(scanner.nextLine());
 
-            if (numSeats <= 0 || numSeats > availableSeats.size()) {
+            if (numSeats <= 0 || numSeats > availability.freeCount()) {
                 System.out.println("Invalid number of seats.");
                 return;
             }
 
-            List<String> bookedSeats = new ArrayList<>();
+            List<String> seatNumbers = new ArrayList<>();
 
             for (int i = 0; i < numSeats; i++) {
                 System.out.print("Enter seat number " + (i + 1) + ": ");
                 String seatNumber = scanner.nextLine().toUpperCase();
 
+                // Early feedback only - the service re-checks under the showtime lock
                 if (!selectedShowtime.isSeatAvailable(seatNumber)) {
                     System.out.println("Seat " + seatNumber + " is not available.");
                     return;
                 }
-
-                try {
-                    selectedShowtime.reserveSeat(seatNumber);
-                    bookedSeats.add(seatNumber);
-                } catch (Exception e) {
-                    System.out.println("Error: " + e.getMessage());
-                    return;
-                }
+                seatNumbers.add(seatNumber);
             }
 
             // Create booking
-            Booking booking = new Booking(
-                generateBookingId(),
-                currentUser.name,
-                selectedMovie.title,
-                selectedShowtime.showtimeId,
-                bookedSeats,
-                LocalDateTime.now()
-            );
-
-            bookings.add(booking);
+            BookingResult result = service.book(selectedShowtime.showtimeId, seatNumbers, currentUser.userId);
+            if (!result.success) {
+                System.out.println("Error: " + result.message);
+                return;
+            }
 
             // Print ticket
-            printTicket(booking);
-
-            // Save data
-            saveMovies();
-            saveBookings();
+            printTicket(result.booking);
 
             System.out.println("Booking successful!");
 
@@ -451,24 +263,36 @@ public class CinemaBookingSystem {
         System.out.println("         Your Bookings");
         System.out.println("========================================");
 
-        if (bookings.isEmpty()) {
+        if (service.getBookings().isEmpty()) {
             System.out.println("No bookings found.");
             return;
         }
 
-        List<Booking> userBookings = getUserBookings();
+        BookingPage page = service.listBookingsForUser(currentUser.userId, null, PAGE_SIZE);
 
-        if (userBookings.isEmpty()) {
+        if (page.bookings.isEmpty()) {
             System.out.println("You have no bookings.");
             return;
         }
 
-        for (int i = 0; i < userBookings.size(); i++) {
-            Booking booking = userBookings.get(i);
-            System.out.println("\n");
-            printTicket(booking, i + 1);
+        int number = 1;
+        while (true) {
+            for (Booking booking : page.bookings) {
+                System.out.println("\n");
+                printTicket(booking, number++);
+            }
+            if (!page.hasMore() || !showMore()) {
+                return;
+            }
+            page = service.listBookingsForUser(currentUser.userId, page.nextPageToken, PAGE_SIZE);
         }
     }
+
+    // Ask whether to list the next page
+    private boolean showMore() {
+        System.out.print("\nShow more? (y/n): ");
+        return scanner.nextLine().trim().equalsIgnoreCase("y");
+    }
     
     // Print ticket for display - consolidated method
     private void printTicket(Booking booking) {
@@ -484,13 +308,14 @@ public class CinemaBookingSystem {
             System.out.println("         CINEMA TICKET");
         }
         System.out.println("========================================");
-        System.out.println("Booking ID: " + booking.bookingId);
-        System.out.println("Customer: " + booking.customerName);
-        System.out.println("Movie: " + booking.movieTitle);
-        System.out.println("Showtime ID: " + booking.showtimeId);
-        System.out.println("Seat(s): " + String.join(", ", booking.seatNumbers));
-        System.out.println("Booking Time: " + booking.bookingTime.format(displayFormatter));
-        System.out.println("Total Seats: " + booking.seatNumbers.size());
+        Showtime showtime = ids.showtime(booking.showtimeRef());
+        System.out.println("Booking ID: " + booking.bookingId());
+        System.out.println("Customer: " + ids.user(booking.userRef()).name);
+        System.out.println("Movie: " + ids.movie(booking.movieRef()).title);
+        System.out.println("Showtime ID: " + showtime.showtimeId);
+        System.out.println("Seat(s): " + booking.seatLabels(showtime, ", "));
+        System.out.println("Booking Time: " + booking.bookingTime().format(displayFormatter));
+        System.out.println("Total Seats: " + booking.seatCount());
         System.out.println("========================================");
         System.out.println("    Thank you for your booking!");
         System.out.println("========================================");
@@ -500,12 +325,8 @@ public class CinemaBookingSystem {
     private void cancelBooking() {
         viewBookings();
 
-        if (bookings.isEmpty()) {
-            return;
-        }
-
         // Get user bookings
-        List<Booking> userBookings = getUserBookings();
+        List<Booking> userBookings = service.bookingsForUser(currentUser.userId);
         if (userBookings.isEmpty()) {
             return;
         }
@@ -521,15 +342,12 @@ public class CinemaBookingSystem {
 
             Booking booking = userBookings.get(bookingIndex);
 
-            // Release seats back to showtime
-            releaseSeatBooking(booking);
-
-            // Remove booking
-            bookings.remove(booking);
-
-            // Save data
-            saveMovies();
-            saveBookings();
+            // Release seats and remove the booking
+            BookingResult result = service.cancel(booking.bookingId());
+            if (!result.success) {
+                System.out.println("Error: " + result.message);
+                return;
+            }
 
             System.out.println("Booking cancelled successfully!");
 
@@ -538,37 +356,6 @@ public class CinemaBookingSystem {
         }
     }
 
-    // Helper method to get user bookings
-    private List<Booking> getUserBookings() {
-        List<Booking> userBookings = new ArrayList<>();
-        for (Booking booking : bookings) {
-            if (booking.customerName.equals(currentUser.name)) {
-                userBookings.add(booking);
-            }
-        }
-        return userBookings;
-    }
-    
-    // Helper method to release seat booking
-    private void releaseSeatBooking(Booking booking) {
-        for (Movie movie : movies) {
-            if (movie.title.equals(booking.movieTitle)) {
-                for (Showtime showtime : movie.showtimes) {
-                    if (showtime.showtimeId.equals(booking.showtimeId)) {
-                        for (String seatNumber : booking.seatNumbers) {
-                            try {
-                                showtime.cancelSeat(seatNumber);
-                            } catch (Exception e) {
-                                System.out.println("Warning: " + e.getMessage());
-                            }
-                        }
-                        return;
-                    }
-                }
-            }
-        }
-    }
-    
     // Helper method to validate user input integer in range
     private Integer getValidIntegerInput(String prompt, int min, int max) {
         System.out.print(prompt);
@@ -604,14 +391,7 @@ public class CinemaBookingSystem {
     
     // Helper method to find showtime by ID
     private Showtime findShowtime(String showtimeId) {
-        for (Movie movie : movies) {
-            for (Showtime showtime : movie.showtimes) {
-                if (showtime.showtimeId.equals(showtimeId)) {
-                    return showtime;
-                }
-            }
-        }
-        return null;
+        return ids.findShowtime(showtimeId);
     }
 
     private void viewAllBookings() {
@@ -619,13 +399,20 @@ public class CinemaBookingSystem {
         System.out.println("         All Bookings");
         System.out.println("========================================");
 
-        if (bookings.isEmpty()) {
+        BookingPage page = service.listBookings(null, PAGE_SIZE);
+        if (page.bookings.isEmpty()) {
             System.out.println("No bookings found.");
             return;
         }
 
-        for (Booking booking : bookings) {
-            System.out.println(booking);
+        while (true) {
+            for (Booking booking : page.bookings) {
+                System.out.println(booking.toString(ids));
+            }
+            if (!page.hasMore() || !showMore()) {
+                return;
+            }
+            page = service.listBookings(page.nextPageToken, PAGE_SIZE);
         }
     }
 
@@ -633,20 +420,51 @@ public class CinemaBookingSystem {
         System.out.println("\n========================================");
         System.out.println("          Statistics");
         System.out.println("========================================");
-        System.out.println("Total Movies: " + movies.size());
-        System.out.println("Total Bookings: " + bookings.size());
+        BookingStatistics statistics = service.statistics();
+        System.out.println("Total Movies: " + statistics.movieCount());
+        System.out.println("Total Bookings: " + statistics.bookingCount());
+        System.out.println("Total Seats Booked: " + statistics.seatsBooked());
+        System.out.println("Total Showtimes: " + statistics.showtimeCount());
 
-        int totalSeatsBooked = 0;
-        for (Booking booking : bookings) {
-            totalSeatsBooked += booking.seatNumbers.size();
+        for (Movie movie : movies) {
+            BookingStatistics.Totals totals = statistics.forMovie(movie.ref);
+            System.out.println("  " + movie.title + ": " + totals.bookings() + " bookings, "
+                               + totals.seats() + " seats");
         }
-        System.out.println("Total Seats Booked: " + totalSeatsBooked);
+    }
 
-        int totalShowtimes = 0;
-        for (Movie movie : movies) {
-            totalShowtimes += movie.showtimes.size();
+    private void viewAnalytics() {
+        System.out.println("\n========================================");
+        System.out.println("          Analytics");
+        System.out.println("========================================");
+        BookingAnalytics analytics = service.analytics();
+        printReport("Movie", analytics.report(BookingAnalytics.BY_MOVIE));
+        printReport("Time of Day", analytics.report(BookingAnalytics.BY_HOUR));
+        printReport("Weekday", analytics.report(BookingAnalytics.BY_WEEKDAY));
+        printReport("Seat Row", analytics.report(BookingAnalytics.BY_SEAT_ROW));
+
+        System.out.println("\nTrending Movies (last 5 minutes, seats requested):");
+        for (Map.Entry<Movie, Long> entry : service.trendingMovies().entrySet()) {
+            System.out.println("  " + entry.getKey().title + ": " + entry.getValue());
+        }
+        System.out.println("\nMost Contested Seats (last 5 minutes, attempts):");
+        for (Map.Entry<String, Long> entry : service.contestedSeats().entrySet()) {
+            System.out.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    private void printReport(String dimension, BookingAnalytics.Report report) {
+        System.out.println("\nBy " + dimension + ":");
+        if (report.groups.isEmpty()) {
+            System.out.println("  No showtimes.");
+            return;
+        }
+        for (BookingAnalytics.Group group : report.groups) {
+            System.out.printf("  %-20s %5d/%-5d seats %5.1f%% occupied  %5d bookings  %5.1f%% cancelled%n",
+                              group.key, group.seatsBooked, group.seatsOffered,
+                              BookingAnalytics.OCCUPANCY.apply(group) * 100, group.bookings,
+                              BookingAnalytics.CANCELLATION_RATE.apply(group) * 100);
         }
-        System.out.println("Total Showtimes: " + totalShowtimes);
     }
 
     private void addNewMovie() {
@@ -669,11 +487,7 @@ public class CinemaBookingSystem {
             }
             
             // Create new movie
-            Movie newMovie = new Movie(generateMovieId(), title, duration);
-            movies.add(newMovie);
-            
-            // Save to file
-            saveMovies();
+            Movie newMovie = service.addMovie(title, duration);
             
             System.out.println("\nMovie added successfully!");
             System.out.println("Movie ID: " + newMovie.movieId);
@@ -750,10 +564,7 @@ public class CinemaBookingSystem {
                 return;
             }
             
-            // Create new showtime
-            Showtime newShowtime = new Showtime(generateShowtimeId(), dateTime, totalSeats);
-            
-            // Add seats to the showtime
+            // Seat naming for the new showtime
             System.out.print("Enter seat prefix (e.g., A, B, C) [default: S]: ");
             String seatPrefix = scanner.nextLine().toUpperCase().trim();
             
@@ -761,15 +572,8 @@ public class CinemaBookingSystem {
                 seatPrefix = "S";
             }
             
-            for (int i = 1; i <= totalSeats; i++) {
-                newShowtime.seats.add(new Seat(seatPrefix + i));
-            }
-            
-            // Add showtime to movie
-            movie.showtimes.add(newShowtime);
-            
-            // Save to file
-            saveMovies();
+            // Create new showtime
+            Showtime newShowtime = service.addShowtime(movie.movieId, dateTime, totalSeats, seatPrefix);
             
             System.out.println("\nShowtime added successfully!");
             System.out.println("Showtime ID: " + newShowtime.showtimeId);
@@ -777,8 +581,10 @@ public class CinemaBookingSystem {
             System.out.println("Total Seats: " + totalSeats);
             System.out.println("Seats: " + seatPrefix + "1 to " + seatPrefix + totalSeats);
             
-        } catch (Exception e) {
+        } catch (DateTimeParseException | NumberFormatException e) {
             System.out.println("Invalid input. Please use yyyy-MM-dd HH:mm format for date and time.");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + ".");
         }
     }
     
@@ -823,28 +629,12 @@ public class CinemaBookingSystem {
                 return;
             }
             
-            // Remove all bookings related to this movie
-            List<Booking> bookingsToRemove = new ArrayList<>();
-            for (Booking booking : bookings) {
-                if (booking.movieTitle.equals(selectedMovie.title)) {
-                    bookingsToRemove.add(booking);
-                }
-            }
-            
-            for (Booking booking : bookingsToRemove) {
-                bookings.remove(booking);
-            }
-            
-            // Remove the movie
-            movies.remove(movieIndex);
-            
-            // Save data
-            saveMovies();
-            saveBookings();
+            // Remove the movie and all bookings related to it
+            int removedBookings = service.removeMovie(selectedMovie.movieId);
             
             System.out.println("\nMovie '" + selectedMovie.title + "' removed successfully!");
-            if (!bookingsToRemove.isEmpty()) {
-                System.out.println(bookingsToRemove.size() + " related booking(s) were also removed.");
+            if (removedBookings > 0) {
+                System.out.println(removedBookings + " related booking(s) were also removed.");
             }
             
         } catch (NumberFormatException e) {
@@ -927,28 +717,12 @@ public class CinemaBookingSystem {
                 return;
             }
             
-            // Remove all bookings related to this showtime
-            List<Booking> bookingsToRemove = new ArrayList<>();
-            for (Booking booking : bookings) {
-                if (booking.showtimeId.equals(selectedShowtime.showtimeId)) {
-                    bookingsToRemove.add(booking);
-                }
-            }
-            
-            for (Booking booking : bookingsToRemove) {
-                bookings.remove(booking);
-            }
-            
-            // Remove the showtime
-            selectedMovie.showtimes.remove(showtimeIndex);
-            
-            // Save data
-            saveMovies();
-            saveBookings();
+            // Remove the showtime and all bookings related to it
+            int removedBookings = service.removeShowtime(selectedShowtime.showtimeId);
             
             System.out.println("\nShowtime removed successfully!");
-            if (!bookingsToRemove.isEmpty()) {
-                System.out.println(bookingsToRemove.size() + " related booking(s) were also removed.");
+            if (removedBookings > 0) {
+                System.out.println(removedBookings + " related booking(s) were also removed.");
             }
             
         } catch (NumberFormatException e) {
@@ -962,158 +736,13 @@ public class CinemaBookingSystem {
             return;
         }
 
-        // Clear all data files
-        File bookingsFile = new File(BOOKINGS_FILE);
-        File moviesFile = new File(MOVIES_FILE);
-
-        if (bookingsFile.exists()) {
-            bookingsFile.delete();
-            System.out.println("Bookings data cleared.");
-        }
-
-        if (moviesFile.exists()) {
-            moviesFile.delete();
-            System.out.println("Movies data cleared.");
-        }
-        
-        movies.clear();
-        bookings.clear();
         System.out.println("All data cleared. Creating new sample data...");
-        createSampleData();
-    }
-    
-    // Storage methods - save and load data
-    private void saveBookings() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(BOOKINGS_FILE))) {
-            for (Booking booking : bookings) {
-                writer.write(booking.bookingId + "|");
-                writer.write(booking.customerName + "|");
-                writer.write(booking.movieTitle + "|");
-                writer.write(booking.showtimeId + "|");
-                writer.write(String.join(",", booking.seatNumbers) + "|");
-                writer.write(booking.bookingTime.format(formatter));
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            System.err.println("Error saving bookings: " + e.getMessage());
-        }
-    }
-
-    private void loadBookings() {
-        File file = new File(BOOKINGS_FILE);
-        
-        if (!file.exists()) {
-            return;
-        }
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(BOOKINGS_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length == 6) {
-                    String bookingId = parts[0];
-                    String customerName = parts[1];
-                    String movieTitle = parts[2];
-                    String showtimeId = parts[3];
-                    
-                    List<String> seatNumbers = new ArrayList<>();
-                    if (!parts[4].isEmpty()) {
-                        String[] seats = parts[4].split(",");
-                        for (String seat : seats) {
-                            seatNumbers.add(seat);
-                        }
-                    }
-                    
-                    LocalDateTime bookingTime = LocalDateTime.parse(parts[5], formatter);
-                    bookings.add(new Booking(bookingId, customerName, movieTitle, showtimeId, seatNumbers, bookingTime));
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error loading bookings: " + e.getMessage());
-        }
-    }
-
-    private void saveMovies() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(MOVIES_FILE))) {
-            for (Movie movie : movies) {
-                writer.write("MOVIE|" + movie.movieId + "|" + movie.title + "|" + movie.duration);
-                writer.newLine();
-                
-                // Save showtimes for this movie
-                for (Showtime showtime : movie.showtimes) {
-                    writer.write("SHOWTIME|" + showtime.showtimeId + "|" + 
-                                showtime.dateTime.format(formatter) + "|" + 
-                                showtime.totalSeats);
-                    writer.newLine();
-                    
-                    // Save seats for this showtime
-                    for (Seat seat : showtime.seats) {
-                        writer.write("SEAT|" + seat.seatNumber + "|" + seat.isBooked);
-                        writer.newLine();
-                    }
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error saving movies: " + e.getMessage());
-        }
-    }
-
-    private void loadMovies() {
-        File file = new File(MOVIES_FILE);
-        
-        if (!file.exists()) {
-            return;
-        }
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(MOVIES_FILE))) {
-            String line;
-            Movie currentMovie = null;
-            Showtime currentShowtime = null;
-            
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                
-                if (parts[0].equals("MOVIE") && parts.length == 4) {
-                    // Save previous movie and showtime if they exist
-                    if (currentShowtime != null && currentMovie != null) {
-                        currentMovie.showtimes.add(currentShowtime);
-                    }
-                    if (currentMovie != null) {
-                        movies.add(currentMovie);
-                    }
-                    
-                    currentMovie = new Movie(parts[1], parts[2], Integer.parseInt(parts[3]));
-                    currentShowtime = null;
-                    
-                } else if (parts[0].equals("SHOWTIME") && parts.length == 4 && currentMovie != null) {
-                    // Save previous showtime if it exists
-                    if (currentShowtime != null) {
-                        currentMovie.showtimes.add(currentShowtime);
-                    }
-                    
-                    LocalDateTime dateTime = LocalDateTime.parse(parts[2], formatter);
-                    currentShowtime = new Showtime(parts[1], dateTime, Integer.parseInt(parts[3]));
-                    
-                } else if (parts[0].equals("SEAT") && parts.length == 3 && currentShowtime != null) {
-                    currentShowtime.seats.add(new Seat(parts[1], Boolean.parseBoolean(parts[2])));
-                }
-            }
-            
-            // Add final showtime and movie
-            if (currentShowtime != null && currentMovie != null) {
-                currentMovie.showtimes.add(currentShowtime);
-            }
-            if (currentMovie != null) {
-                movies.add(currentMovie);
-            }
-            
-        } catch (IOException e) {
-            System.err.println("Error loading movies: " + e.getMessage());
-        }
+        service.clearAllData();
     }
 
     // Exit the system
     private void exit() {
+        service.shutdown();
         System.out.println("\n========================================");
         System.out.println("Thank you for using Cinema Booking System!");
         System.out.println("========================================");
@@ -1144,6 +773,7 @@ public class CinemaBookingSystem {
                         break;
                     case 3:
                         System.out.println("\nThank you for visiting. Goodbye!");
+                        service.shutdown();
                         scanner.close();
                         System.exit(0);
                         return;
@@ -1182,12 +812,11 @@ public class CinemaBookingSystem {
         System.out.print("Enter password: ");
         String password = scanner.nextLine();
 
-        for (User user : users) {
-            if (user.name.equals(username) && user.password.equals(password) && user.role.equals(userType)) {
-                currentUser = user;
-                System.out.println("\nLogin successful! Welcome back, " + username + "!");
-                return;
-            }
+        User user = service.authenticate(username, password, userType);
+        if (user != null) {
+            currentUser = user;
+            System.out.println("\nLogin successful! Welcome back, " + username + "!");
+            return;
         }
 
         System.out.println("\nLogin failed. Invalid username, password, or user type.");
@@ -1218,11 +847,9 @@ public class CinemaBookingSystem {
         String username = scanner.nextLine().trim();
 
         // Check if username already exists
-        for (User user : users) {
-            if (user.name.equals(username)) {
-                System.out.println("\nUsername already exists. Please choose a different username.");
-                return;
-            }
+        if (service.findUserByName(username) != null) {
+            System.out.println("\nUsername already exists. Please choose a different username.");
+            return;
         }
 
         System.out.print("Enter password: ");
@@ -1240,39 +867,11 @@ public class CinemaBookingSystem {
             return;
         }
 
-        User newUser = new User(generateUserId(), username, password, userType, "", "");
-        users.add(newUser);
-        saveUsers();
-        System.out.println("\nRegistration successful! You can now login.");
-    }
-
-    // Load users from file
-    private void loadUsers() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(USERS_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length >= 4) {
-                    User user = new User(parts[0], parts[1], parts[2], parts[3], "", "");
-                    users.add(user);
-                }
-            }
-        } catch (FileNotFoundException e) {
-            // No users file yet - starting fresh
-        } catch (IOException e) {
-            System.err.println("Error loading users: " + e.getMessage());
-        }
-    }
-
-    // Save users to file
-    private void saveUsers() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(USERS_FILE))) {
-            for (User user : users) {
-                writer.println(user.userId + "|" + user.name + "|" + user.password + "|" + user.role);
-            }
-        } catch (IOException e) {
-            System.err.println("Error saving users: " + e.getMessage());
+        if (service.registerUser(username, password, userType) == null) {
+            System.out.println("\nUsername already exists. Please choose a different username.");
+            return;
         }
+        System.out.println("\nRegistration successful! You can now login.");
     }
 
     // Getter methods for testing purposes
@@ -1280,12 +879,20 @@ public class CinemaBookingSystem {
         return movies;
     }
     
-    public List<Booking> getBookings() {
-        return bookings;
+    public BookingStore getBookings() {
+        return service.getBookings();
     }
     
     public List<User> getUsers() {
-        return users;
+        return service.getUsers();
+    }
+    
+    public IdTable getIdTable() {
+        return ids;
+    }
+    
+    public BookingService getService() {
+        return service;
     }
 
     // Main method to start the system
@@ -0,0 +1,325 @@
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Text-file storage for movies, bookings and users in one data directory.
+// The line readers and writers work on any stream, not only the data files.
+public class CinemaStorage {
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String CANCELLED = "CANCELLED";
+
+    private final File bookingsFile;
+    private final File moviesFile;
+    private final File usersFile;
+    private final File idsFile;
+
+    // Constructor - files live in the given directory
+    public CinemaStorage(String directory) {
+        File dir = new File(directory);
+        dir.mkdirs();
+        this.bookingsFile = new File(dir, "bookings.txt");
+        this.moviesFile = new File(dir, "movies.txt");
+        this.usersFile = new File(dir, "users.txt");
+        this.idsFile = new File(dir, "ids.txt");
+    }
+
+    public IdAllocator.MarkFile idMarks() {
+        return new IdAllocator.MarkFile(idsFile.getPath());
+    }
+
+    // Delete the movie and booking files
+    public void clearCatalog() {
+        bookingsFile.delete();
+        moviesFile.delete();
+    }
+
+    // ==================== Movies ====================
+
+    public List<Movie> loadMovies() {
+        List<Movie> movies = new ArrayList<>();
+        if (!moviesFile.exists()) {
+            return movies;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(moviesFile))) {
+            readMovies(reader, movies);
+        } catch (IOException e) {
+            System.err.println("Error loading movies: " + e.getMessage());
+        }
+        return movies;
+    }
+
+    public void saveMovies(List<Movie> movies) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(moviesFile))) {
+            writeMovies(writer, movies);
+        } catch (IOException e) {
+            System.err.println("Error saving movies: " + e.getMessage());
+        }
+    }
+
+    public static void writeMovies(BufferedWriter writer, List<Movie> movies) throws IOException {
+        for (Movie movie : movies) {
+            writer.write("MOVIE|" + movie.movieId + "|" + movie.title + "|" + movie.duration);
+            writer.newLine();
+
+            // Save showtimes for this movie
+            for (Showtime showtime : movie.showtimes) {
+                writer.write("SHOWTIME|" + showtime.showtimeId + "|" +
+                            showtime.dateTime.format(formatter) + "|" +
+                            showtime.totalSeats);
+                writer.newLine();
+
+                // Save seats for this showtime
+                for (Seat seat : showtime.seats) {
+                    writer.write("SEAT|" + seat.seatNumber + "|" + seat.isBooked);
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    // Read MOVIE/SHOWTIME/SEAT lines until the end of the stream
+    public static void readMovies(BufferedReader reader, List<Movie> movies) throws IOException {
+        String line;
+        Movie currentMovie = null;
+        Showtime currentShowtime = null;
+
+        while ((line = reader.readLine()) != null) {
+            String[] parts = line.split("\\|");
+
+            if (parts[0].equals("MOVIE") && parts.length == 4) {
+                // Save previous movie and showtime if they exist
+                if (currentShowtime != null && currentMovie != null) {
+                    currentMovie.showtimes.add(currentShowtime);
+                }
+                if (currentMovie != null) {
+                    movies.add(currentMovie);
+                }
+
+                currentMovie = new Movie(parts[1], parts[2], Integer.parseInt(parts[3]));
+                currentShowtime = null;
+
+            } else if (parts[0].equals("SHOWTIME") && parts.length == 4 && currentMovie != null) {
+                // Save previous showtime if it exists
+                if (currentShowtime != null) {
+                    currentMovie.showtimes.add(currentShowtime);
+                }
+
+                LocalDateTime dateTime = LocalDateTime.parse(parts[2], formatter);
+                currentShowtime = new Showtime(parts[1], dateTime, Integer.parseInt(parts[3]));
+
+            } else if (parts[0].equals("SEAT") && parts.length == 3 && currentShowtime != null) {
+                currentShowtime.seats.add(new Seat(parts[1], Boolean.parseBoolean(parts[2])));
+            }
+        }
+
+        // Add final showtime and movie
+        if (currentShowtime != null && currentMovie != null) {
+            currentMovie.showtimes.add(currentShowtime);
+        }
+        if (currentMovie != null) {
+            movies.add(currentMovie);
+        }
+    }
+
+    // ==================== Bookings ====================
+
+    // Load bookings, collecting the request keys of keyed bookings into requestKeys by row
+    public void loadBookings(IdTable ids, List<User> users, BookingStore bookings, Map<Integer, String> requestKeys) {
+        if (!bookingsFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(bookingsFile))) {
+            readBookings(reader, ids, users, bookings, requestKeys);
+        } catch (IOException e) {
+            System.err.println("Error loading bookings: " + e.getMessage());
+        }
+    }
+
+    public void saveBookings(IdTable ids, BookingStore bookings, Map<Long, String> requestKeys) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(bookingsFile))) {
+            writeBookings(writer, ids, bookings, requestKeys);
+        } catch (IOException e) {
+            System.err.println("Error saving bookings: " + e.getMessage());
+        }
+    }
+
+    // Bookings in row order, the cancelled ones with the status after the key - so cancellation
+    // figures survive a restart, and a retry of a cancelled booking's request key is refused
+    // rather than booked again. Keeping row order keeps a page token that ended on a booking
+    // cancelled since in place after a reload. Bookings of removed showtimes are dropped.
+    public static void writeBookings(BufferedWriter writer, IdTable ids, BookingStore bookings,
+                                     Map<Long, String> requestKeys) throws IOException {
+        int rows = bookings.size();
+        for (int row = 0; row < rows; row++) {
+            String requestKey = requestKeys.get(bookings.id(row));
+            if (bookings.isLive(row)) {
+                writer.write(formatBooking(ids, new Booking(bookings, row), requestKey));
+                writer.newLine();
+            } else if (ids.showtime(bookings.showtimeRef(row)) != null) {
+                writer.write(formatBooking(ids, new Booking(bookings, row), requestKey == null ? "" : requestKey)
+                             + "|" + CANCELLED);
+                writer.newLine();
+            }
+        }
+    }
+
+    // One booking line: bookingId|userId|movieId|showtimeId|seat labels|booking time,
+    // followed by |request key when the client sent one. Cancelled bookings add |CANCELLED.
+    public static String formatBooking(IdTable ids, Booking booking, String requestKey) {
+        Showtime showtime = ids.showtime(booking.showtimeRef());
+        return booking.bookingId() + "|" +
+               ids.user(booking.userRef()).userId + "|" +
+               ids.movie(booking.movieRef()).movieId + "|" +
+               showtime.showtimeId + "|" +
+               booking.seatLabels(showtime, ",") + "|" +
+               booking.bookingTime().format(formatter) +
+               (requestKey == null ? "" : "|" + requestKey);
+    }
+
+    // Read booking lines until the end of the stream. Cancelled bookings are appended and
+    // removed again, so they keep their IDs and request keys but hold no seats. Files written
+    // live bookings first can list a booking live and, if it was cancelled during the write,
+    // cancelled again further down; the cancellation is the later state and wins, and a
+    // second line for a booking that already has a row is otherwise skipped.
+    public static void readBookings(BufferedReader reader, IdTable ids, List<User> users,
+                                    BookingStore bookings, Map<Integer, String> requestKeys) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] parts = line.split("\\|");
+            boolean cancelled = parts.length == 8 && parts[7].equals(CANCELLED);
+            if (parts.length != 6 && parts.length != 7 && !cancelled) {
+                continue;
+            }
+            int row = bookings.rowOf(Booking.parseId(parts[0]));
+            if (row >= 0) {
+                if (cancelled) {
+                    bookings.remove(row);
+                }
+                continue;
+            }
+            row = parseBooking(parts, ids, users, bookings);
+            if (row < 0) {
+                continue;
+            }
+            if (cancelled) {
+                bookings.remove(row);
+            }
+            if (parts.length >= 7 && !parts[6].isEmpty()) {
+                requestKeys.put(row, parts[6]);
+            }
+        }
+    }
+
+    // Append the booking in a split line to the store and return its row, -1 if it cannot
+    // be resolved
+    static int parseBooking(String[] parts, IdTable ids, List<User> users, BookingStore bookings) {
+        String bookingId = parts[0];
+        long id = Booking.parseId(bookingId);
+        if (id < 0) {
+            System.err.println("Skipping booking " + bookingId + ": malformed ID");
+            return -1;
+        }
+
+        // Resolve references - older files hold customer names instead of user IDs
+        Showtime showtime = ids.findShowtime(parts[3]);
+        User user = ids.findUser(parts[1]);
+        if (user == null) {
+            user = findUserByName(users, parts[1]);
+        }
+        if (showtime == null || user == null) {
+            System.err.println("Skipping booking " + bookingId + ": unknown showtime or customer");
+            return -1;
+        }
+
+        // Seats are stored by label and resolved to slot indices once, here
+        if (parts[4].isEmpty()) {
+            System.err.println("Skipping booking " + bookingId + ": no seats");
+            return -1;
+        }
+        String[] labels = parts[4].split(",");
+        int[] seats = new int[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            seats[i] = showtime.indexOfSeat(labels[i]);
+            if (seats[i] < 0) {
+                System.err.println("Skipping booking " + bookingId + ": unknown seat");
+                return -1;
+            }
+        }
+
+        LocalDateTime bookingTime;
+        try {
+            bookingTime = LocalDateTime.parse(parts[5], formatter);
+        } catch (DateTimeParseException e) {
+            System.err.println("Skipping booking " + bookingId + ": malformed time");
+            return -1;
+        }
+        return bookings.append(id, ids.movieOf(showtime.ref), showtime.ref, user.ref, seats, bookingTime).row();
+    }
+
+    // ==================== Users ====================
+
+    public List<User> loadUsers() {
+        List<User> users = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(usersFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                User user = parseUser(line);
+                if (user != null) {
+                    users.add(user);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // No users file yet - starting fresh
+        } catch (IOException e) {
+            System.err.println("Error loading users: " + e.getMessage());
+        }
+        return users;
+    }
+
+    public void saveUsers(List<User> users) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(usersFile))) {
+            for (User user : users) {
+                writer.println(formatUser(user));
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving users: " + e.getMessage());
+        }
+    }
+
+    // One user line: userId|name|password|role
+    public static String formatUser(User user) {
+        return user.userId + "|" + user.name + "|" + user.password + "|" + user.role;
+    }
+
+    // Parse a user line, null if it is malformed
+    public static User parseUser(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 4) {
+            return null;
+        }
+        return new User(parts[0], parts[1], parts[2], parts[3], "", "");
+    }
+
+    // Date and time in the format used by all data files
+    public static String formatTime(LocalDateTime dateTime) {
+        return dateTime.format(formatter);
+    }
+
+    public static LocalDateTime parseTime(String text) {
+        return LocalDateTime.parse(text, formatter);
+    }
+
+    // Find a registered user by name
+    public static User findUserByName(List<User> users, String name) {
+        for (User user : users) {
+            if (user.name.equals(name)) {
+                return user;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,1024 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Concurrency Test Suite for Cinema Booking System
+ * Checks the components that coordinate threads or replicas: replication catch-up,
+ * waiting room tickets, admission control, request key replay, heavy hitters, sessions,
+ * the sharded engine, catalog removal, the heap and off-heap booking stores, batches,
+ * paged listings and booking IDs across a crash
+ * Exits with 1 when any check fails
+ */
+public class ConcurrencyTest {
+
+    // Check counters
+    private static AtomicInteger passedChecks = new AtomicInteger(0);
+    private static AtomicInteger failedChecks = new AtomicInteger(0);
+
+    public static void main(String[] args) throws Exception {
+        // Test users are registered by the dozen - cheap hashes keep the suite fast
+        if (System.getProperty("cinema.passwordIterations") == null) {
+            System.setProperty("cinema.passwordIterations", "1000");
+        }
+
+        System.out.println("================================================================");
+        System.out.println("    CINEMA BOOKING SYSTEM - CONCURRENCY TEST SUITE");
+        System.out.println("================================================================");
+
+        // Run all tests
+        test1_ReplicaCatchUp();
+        test2_WaitingRoomTickets();
+        test3_AdmissionControl();
+        test4_RequestKeyReplay();
+        test5_HeavyHitters();
+        test6_Sessions();
+        test7_ShardedEngine();
+        test8_ConcurrentRemoval();
+        test9_StoreParity();
+        test10_BatchBooking();
+        test11_PagedListings();
+        test12_IdsAfterCrash();
+
+        // Generate final report
+        System.out.println("\n================================================================");
+        System.out.println("Checks: " + passedChecks.get() + " passed, " + failedChecks.get() + " failed");
+        System.out.println("================================================================\n");
+        System.exit(failedChecks.get() == 0 ? 0 : 1);
+    }
+
+    // ==================== TEST 1: Replica Catch-Up ====================
+    private static void test1_ReplicaCatchUp() throws Exception {
+        System.out.println("\n[TEST 1] Replica Seat Map After Snapshot and Log Catch-Up");
+        System.out.println("--------------------------------------------------");
+
+        // 1.1: A snapshot whose seat flags predate a cancel and a rebooking of the same seat
+        // that are in its bookings - as if both happened between its two passes
+        System.out.println("  1.1: Torn Snapshot...");
+        File leaderDir = tempDir();
+        File followerDir = tempDir();
+        try {
+            BookingService leader = newService(leaderDir);
+            Movie movie = leader.addMovie("Replicated", 120);
+            Showtime showtime = leader.addShowtime(movie.movieId, LocalDateTime.now().plusDays(1), 10, "A");
+            User alice = leader.registerUser("alice", "pw", "CUSTOMER");
+            User bob = leader.registerUser("bob", "pw", "CUSTOMER");
+            List<String> records = new CopyOnWriteArrayList<>();
+            leader.setChangeListener(records::add);
+
+            Booking first = leader.book(showtime.showtimeId, List.of("A1", "A2"), alice.userId).booking;
+            String before = snapshot(leader);
+            int offset = records.size();
+            leader.cancel(first.bookingId());
+            leader.book(showtime.showtimeId, List.of("A1"), bob.userId);
+            String after = snapshot(leader);
+            String torn = before.substring(0, before.indexOf("BOOKINGS"))
+                        + after.substring(after.indexOf("BOOKINGS"));
+
+            BookingService follower = new BookingService(new CinemaStorage(followerDir.getPath()));
+            follower.setAutoSave(false);
+            follower.loadSnapshot(new BufferedReader(new StringReader(torn)));
+            for (String record : records.subList(offset, records.size())) {
+                follower.applyChange(record);
+            }
+            check(seatMap(follower).equals(seatMap(leader)), "Seat map matches the leader's");
+            check(bookingIds(follower).equals(bookingIds(leader)), "Bookings match the leader's");
+        } finally {
+            deleteDir(leaderDir);
+            deleteDir(followerDir);
+        }
+
+        // 1.2: Followers joining over the socket while bookings and cancels go on
+        System.out.println("  1.2: Snapshots Under Load...");
+        int writers = 4;
+        int followerCount = 3;
+        long churnMillis = 1500;
+        leaderDir = tempDir();
+        List<File> followerDirs = new ArrayList<>();
+        List<ReplicationFollower> followers = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            BookingService leader = newService(leaderDir);
+            List<Showtime> showtimes = new ArrayList<>();
+            for (int m = 0; m < 3; m++) {
+                Movie movie = leader.addMovie("Churn " + m, 100);
+                showtimes.add(leader.addShowtime(movie.movieId, LocalDateTime.now().plusDays(1), 20, "A"));
+            }
+            List<User> users = new ArrayList<>();
+            for (int u = 0; u < writers; u++) {
+                users.add(leader.registerUser("churn" + u, "pw", "CUSTOMER"));
+            }
+            ReplicationLeader replication = new ReplicationLeader(leader, 0);
+            replication.start();
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicInteger operations = new AtomicInteger();
+            for (int t = 0; t < writers; t++) {
+                User user = users.get(t);
+                executor.submit(() -> {
+                    // Book random seats and keep a few, cancelling a random older one
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    List<String> held = new ArrayList<>();
+                    while (running.get()) {
+                        Showtime showtime = showtimes.get(random.nextInt(showtimes.size()));
+                        String seat = showtime.seatLabel(random.nextInt(showtime.totalSeats));
+                        BookingResult result = leader.book(showtime.showtimeId, List.of(seat), user.userId);
+                        if (result.success) {
+                            held.add(result.booking.bookingId());
+                        }
+                        if (held.size() > 3) {
+                            leader.cancel(held.remove(random.nextInt(held.size())));
+                        }
+                        operations.incrementAndGet();
+                    }
+                });
+            }
+
+            // Each follower starts from a snapshot written in the middle of the churn
+            for (int f = 0; f < followerCount; f++) {
+                Thread.sleep(churnMillis / followerCount);
+                File dir = tempDir();
+                followerDirs.add(dir);
+                ReplicationFollower follower = new ReplicationFollower(dir.getPath(), replication.getPort());
+                follower.start();
+                followers.add(follower);
+            }
+            running.set(false);
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+
+            long end = replication.endOffset();
+            long deadline = System.currentTimeMillis() + 10_000;
+            for (ReplicationFollower follower : followers) {
+                while (follower.getAppliedOffset() < end && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(20);
+                }
+            }
+            System.out.println("  " + operations.get() + " operations, " + end + " records");
+            for (int f = 0; f < followers.size(); f++) {
+                BookingService replica = followers.get(f).getReplica();
+                check(followers.get(f).getAppliedOffset() == end, "Follower " + (f + 1) + " caught up");
+                check(seatMap(replica).equals(seatMap(leader)),
+                      "Follower " + (f + 1) + " seat map matches the leader's");
+                check(bookingIds(replica).equals(bookingIds(leader)),
+                      "Follower " + (f + 1) + " bookings match the leader's");
+            }
+            replication.stop();
+        } finally {
+            executor.shutdownNow();
+            for (ReplicationFollower follower : followers) {
+                follower.stop();
+            }
+            deleteDir(leaderDir);
+            for (File dir : followerDirs) {
+                deleteDir(dir);
+            }
+        }
+    }
+
+    // ==================== TEST 2: Waiting Room Tickets ====================
+    private static void test2_WaitingRoomTickets() throws Exception {
+        System.out.println("\n[TEST 2] Waiting Room Ticket Checks");
+        System.out.println("--------------------------------------------------");
+
+        // 2.1: Tickets only work for their own showtime and user
+        System.out.println("  2.1: Forged and Borrowed Tickets...");
+        WaitingRoom room = new WaitingRoom(1000, 60_000);
+        String ticket = room.join("S1", "U1");
+        check(rejected(() -> room.position("S1", "U1", "0")), "Bare ticket number is rejected");
+        check(rejected(() -> room.position("S1", "U1", "0-AAAAAAAAAAAAAAAAAAAAAA")), "Forged ticket is rejected");
+        check(rejected(() -> room.position("S1", "U2", ticket)), "Another user's ticket is rejected");
+        check(rejected(() -> room.position("S2", "U1", ticket)), "Ticket for another showtime is rejected");
+
+        // 2.2: Many concurrent attempts with one admitted ticket - only one gets through
+        System.out.println("  2.2: Admitted Ticket Reuse...");
+        while (room.position("S1", "U1", ticket) > 0) {
+            Thread.sleep(1);
+        }
+        int attempts = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(attempts);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        AtomicInteger redeemed = new AtomicInteger();
+        for (int t = 0; t < attempts; t++) {
+            executor.submit(() -> {
+                startLatch.await();
+                if (room.redeem("S1", "U1", ticket)) {
+                    redeemed.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        startLatch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        check(redeemed.get() == 1, "One of " + attempts + " concurrent attempts redeemed the ticket ("
+              + redeemed.get() + ")");
+        check(rejected(() -> room.position("S1", "U1", ticket)), "Used ticket is rejected afterwards");
+
+        // 2.3: An admitted ticket left unused past the window expires
+        System.out.println("  2.3: Ticket Expiry...");
+        WaitingRoom shortRoom = new WaitingRoom(1000, 200);
+        String late = shortRoom.join("S1", "U1");
+        while (shortRoom.position("S1", "U1", late) > 0) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(300);
+        check(rejected(() -> shortRoom.position("S1", "U1", late)), "Ticket expires after its use window");
+        check(!shortRoom.redeem("S1", "U1", late), "Expired ticket cannot be redeemed");
+
+        // 2.4: A queue left quiet for a second does not admit a crowd at once when it arrives
+        System.out.println("  2.4: Quiet Spell...");
+        WaitingRoom slowRoom = new WaitingRoom(10, 60_000);
+        String first = slowRoom.join("S1", "U0");
+        while (slowRoom.position("S1", "U0", first) > 0) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(1000);
+        for (int u = 1; u <= 20; u++) {
+            slowRoom.join("S1", "U" + u);
+        }
+        check(slowRoom.waiting("S1") >= 18, "Arrivals after the quiet spell wait their turn ("
+              + slowRoom.waiting("S1") + " of 20 waiting)");
+    }
+
+    // ==================== TEST 3: Admission Control ====================
+    private static void test3_AdmissionControl() throws Exception {
+        System.out.println("\n[TEST 3] Token Buckets and In-Flight Bound");
+        System.out.println("--------------------------------------------------");
+
+        // 3.1: A burst drains the bucket, which refills at the rate but never past the burst
+        System.out.println("  3.1: Refill...");
+        AdmissionController controller = new AdmissionController(100, 10, 5);
+        check(admitInARow(controller, "U1", 10) == 5, "A full bucket admits a burst of 5");
+        Thread.sleep(200);
+        int refilled = admitInARow(controller, "U1", 10);
+        check(refilled >= 2 && refilled < 5, "200 ms at 10/s refills about 2 tokens (" + refilled + ")");
+        Thread.sleep(1000);
+        check(admitInARow(controller, "U1", 10) == 5, "A long pause refills to the burst, no further");
+
+        // 3.2: Concurrent takes from one bucket never admit more than it holds
+        System.out.println("  3.2: Concurrent Takes...");
+        AdmissionController shared = new AdmissionController(1000, 1, 50);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        AtomicInteger admitted = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                startLatch.await();
+                admitted.addAndGet(admitInARow(shared, "U1", 100));
+                return null;
+            });
+        }
+        startLatch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        check(admitted.get() >= 50 && admitted.get() <= 51,
+              threads + " threads took " + admitted.get() + " of a 50-token burst");
+
+        // 3.3: A request shed by the in-flight bound keeps its user's token
+        System.out.println("  3.3: Token Refund...");
+        AdmissionController busy = new AdmissionController(1, 0.001, 2);
+        check(busy.tryAcquire("U1") == AdmissionController.Decision.ADMITTED, "First request fills the bound");
+        boolean allOverloaded = true;
+        for (int i = 0; i < 5; i++) {
+            allOverloaded &= busy.tryAcquire("U2") == AdmissionController.Decision.OVERLOADED;
+        }
+        check(allOverloaded, "Further requests are shed as overloaded, not rate limited");
+        busy.release();
+        check(admitInARow(busy, "U2", 5) == 2, "The shed requests cost no tokens");
+
+        // 3.4: Past the tracked-user limit, buckets are evicted in batches
+        System.out.println("  3.4: Eviction...");
+        AdmissionController crowded = new AdmissionController(100, 0.001, 10, 1000);
+        long start = System.nanoTime();
+        for (int u = 0; u < 100_000; u++) {
+            crowded.tryAcquire("crowd" + u);
+            crowded.release();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("  100000 new users in " + millis + " ms");
+        check(crowded.trackedUsers() <= 1000, "Tracked users stay within the limit ("
+              + crowded.trackedUsers() + ")");
+        check(admitInARow(crowded, "crowd99999", 20) == 9, "The newest user keeps its bucket");
+    }
+
+    // ==================== TEST 4: Request Key Replay ====================
+    private static void test4_RequestKeyReplay() throws Exception {
+        System.out.println("\n[TEST 4] Request Key Replay Across Save and Load");
+        System.out.println("--------------------------------------------------");
+
+        File dir = tempDir();
+        try {
+            BookingService before = newService(dir);
+            Movie movie = before.addMovie("Deduplicated", 120);
+            Showtime showtime = before.addShowtime(movie.movieId, LocalDateTime.now().plusDays(1), 10, "A");
+            User alice = before.registerUser("alice", "pw", "CUSTOMER");
+            Booking kept = before.book(showtime.showtimeId, List.of("A1"), alice.userId, "key-kept").booking;
+            Booking dropped = before.book(showtime.showtimeId, List.of("A2"), alice.userId, "key-dropped").booking;
+            before.cancel(dropped.bookingId());
+            before.save();
+
+            // 4.1: A retry of a live booking's key gets that booking back
+            System.out.println("  4.1: Live Booking...");
+            BookingService after = newService(dir);
+            BookingResult retried = after.book(showtime.showtimeId, List.of("A1"), alice.userId, "key-kept");
+            check(retried.success && retried.booking.id() == kept.id(), "Retry returns the original booking");
+
+            // 4.2: A retry of a cancelled booking's key is refused, not booked again
+            System.out.println("  4.2: Cancelled Booking...");
+            BookingResult again = after.book(showtime.showtimeId, List.of("A2"), alice.userId, "key-dropped");
+            check(!again.success && again.message.contains("cancelled"), "Retry is refused: " + again.message);
+            check(bookingIds(after).equals(Set.of(kept.bookingId())), "Only the live booking is loaded");
+            check(seatMap(after).equals(seatMap(before)), "Seat map matches the saved one");
+
+            // 4.3: The cancelled key outlives a second save and load, and its ID is not reused
+            System.out.println("  4.3: Second Restart...");
+            after.save();
+            BookingService later = newService(dir);
+            BookingResult third = later.book(showtime.showtimeId, List.of("A2"), alice.userId, "key-dropped");
+            check(!third.success, "Retry is still refused after a second restart");
+            Booking fresh = later.book(showtime.showtimeId, List.of("A2"), alice.userId, "key-new").booking;
+            check(fresh != null && fresh.id() > dropped.id(), "A new booking gets a new ID");
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    // ==================== TEST 5: Heavy Hitters ====================
+    private static void test5_HeavyHitters() throws Exception {
+        System.out.println("\n[TEST 5] Count-Min Estimates and Pane Expiry");
+        System.out.println("--------------------------------------------------");
+
+        // 5.1: Estimates from concurrent adds are never low, and high by little. One pane of a
+        // week, so the window does not slide during the check.
+        System.out.println("  5.1: Over-Estimate Bounds...");
+        HeavyHitters hitters = new HeavyHitters(5, 7L * 24 * 3600 * 1000, 1);
+        int threads = 8;
+        int lightKeys = 100_000;
+        long[] heavyCounts = {5000, 4000, 3000, 2000, 1000};
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            executor.submit(() -> {
+                for (int key = 1000 + first; key < 1000 + lightKeys; key += threads) {
+                    hitters.add(key, 1);
+                }
+                for (int h = 0; h < heavyCounts.length; h++) {
+                    for (long i = first; i < heavyCounts[h]; i += threads) {
+                        hitters.add(h, 1);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+        long total = lightKeys + Arrays.stream(heavyCounts).sum();
+        // Count-Min: high by at most e/width of the total for all but a few keys in e^depth
+        long bound = (long) Math.ceil(Math.E / 1024 * total);
+        boolean neverLow = true;
+        boolean heavyClose = true;
+        for (int h = 0; h < heavyCounts.length; h++) {
+            long estimate = hitters.estimate(h);
+            neverLow &= estimate >= heavyCounts[h];
+            heavyClose &= estimate - heavyCounts[h] <= bound;
+        }
+        long excess = 0;
+        for (int key = 1000; key < 1000 + lightKeys; key++) {
+            long estimate = hitters.estimate(key);
+            neverLow &= estimate >= 1;
+            excess += estimate - 1;
+        }
+        check(neverLow, "No estimate is below the true count");
+        check(heavyClose, "Heavy keys are high by at most " + bound);
+        check(excess / lightKeys <= total / 1024, "Light keys are high by " + excess / lightKeys
+              + " on average, within total/width");
+        List<HeavyHitters.Hitter> top = hitters.top();
+        boolean ranked = top.size() == heavyCounts.length;
+        for (int h = 0; ranked && h < heavyCounts.length; h++) {
+            ranked = top.get(h).key == h;
+        }
+        check(ranked, "Top 5 are the heavy keys, heaviest first");
+
+        // 5.2: Counts leave the window with their pane. Panes of 400 ms, four to the window.
+        System.out.println("  5.2: Pane Expiry...");
+        HeavyHitters sliding = new HeavyHitters(5, 1600, 4);
+        sliding.add(42, 10);
+        Thread.sleep(800);
+        sliding.add(42, 10);
+        check(sliding.estimate(42) == 20, "Both panes count within the window");
+        Thread.sleep(1000);
+        check(sliding.estimate(42) == 10, "The older pane has left the window");
+        Thread.sleep(1700);
+        check(sliding.estimate(42) == 0 && sliding.top().isEmpty(), "Nothing is left after a full window");
+    }
+
+    // ==================== TEST 6: Sessions ====================
+    private static void test6_Sessions() throws Exception {
+        System.out.println("\n[TEST 6] Session Expiry and Memory Bound");
+        System.out.println("--------------------------------------------------");
+        User alice = new User("U1", "alice", "pw", "CUSTOMER");
+
+        // 6.1: A session ends at its time-to-live, or on logout
+        System.out.println("  6.1: Expiry...");
+        SessionCache shortLived = new SessionCache(200, 1000);
+        String token = shortLived.create(alice);
+        String loggedOut = shortLived.create(alice);
+        check(shortLived.validate(token) == alice, "A new session is valid");
+        shortLived.invalidate(loggedOut);
+        check(shortLived.validate(loggedOut) == null, "A logged-out session is not");
+        Thread.sleep(300);
+        check(shortLived.validate(token) == null, "An expired session is not");
+        check(shortLived.validate("forged") == null && shortLived.validate(null) == null,
+              "Unknown tokens are not");
+
+        // 6.2: A flood of concurrent logins stays within two generations
+        System.out.println("  6.2: Memory Bound...");
+        SessionCache crowded = new SessionCache(60_000, 1000);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    crowded.create(alice);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+        // Logins that pass the size check together can overfill a generation, one per thread
+        check(crowded.size() <= 2 * (1000 + threads), "80000 logins keep " + crowded.size() + " sessions");
+        String fresh = crowded.create(alice);
+        check(crowded.validate(fresh) == alice, "A login after the flood is valid");
+    }
+
+    // ==================== TEST 7: Sharded Engine ====================
+    private static void test7_ShardedEngine() throws Exception {
+        System.out.println("\n[TEST 7] Sharded Batches and Cancel Routing");
+        System.out.println("--------------------------------------------------");
+
+        File dir = tempDir();
+        ShardedBookingEngine engine = new ShardedBookingEngine(dir.getPath(), 4);
+        try {
+            engine.load();
+            engine.setAutoSave(false);
+            Movie movie = engine.addMovie("Sharded", 120);
+            List<Showtime> showtimes = new ArrayList<>();
+            Set<Integer> partitions = new HashSet<>();
+            for (int s = 0; s < 8; s++) {
+                Showtime showtime = engine.addShowtime(movie.movieId, LocalDateTime.now().plusDays(1), 10, "A");
+                showtimes.add(showtime);
+                partitions.add(engine.shardOf(showtime.showtimeId));
+            }
+            User alice = engine.registerUser("alice", "pw", "CUSTOMER");
+            check(partitions.size() > 1, "The showtimes span " + partitions.size() + " partitions");
+
+            // 7.1: A batch split across partitions answers in request order
+            System.out.println("  7.1: Batch Order...");
+            List<BookingRequest> requests = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                requests.add(new BookingRequest(showtimes.get(i % 8).showtimeId, List.of("A" + (1 + i / 8)),
+                                                alice.userId));
+            }
+            requests.add(new BookingRequest(showtimes.get(3).showtimeId, List.of("A1"), alice.userId));
+            List<BookingResult> results = engine.bookBatch(requests);
+            boolean inOrder = results.size() == requests.size();
+            for (int i = 0; inOrder && i < 16; i++) {
+                BookingRequest request = requests.get(i);
+                BookingResult result = results.get(i);
+                inOrder = result.success
+                    && result.booking.seatLabels(engine.findShowtime(request.showtimeId), ",")
+                                     .equals(request.seatNumbers.get(0))
+                    && engine.shardOfBooking(result.booking.bookingId()) == engine.shardOf(request.showtimeId);
+            }
+            check(inOrder, "Each result answers its own request, from its showtime's partition");
+            check(!results.get(16).success, "A seat taken earlier in the batch is refused");
+            check(engine.liveBookingCount() == 16, "16 bookings are live");
+
+            // 7.2: Cancels find the partition from the booking ID alone
+            System.out.println("  7.2: Cancel Routing...");
+            boolean routed = true;
+            for (int i = 0; i < 16; i += 2) {
+                routed &= engine.cancel(results.get(i).booking.bookingId()).success;
+            }
+            check(routed, "Every cancel reaches its booking's partition");
+            check(engine.liveBookingCount() == 8 && engine.bookingsForUser(alice.userId).size() == 8,
+                  "8 bookings are left, across partitions");
+            check(!engine.cancel("nonsense").success && !engine.cancel(results.get(0).booking.bookingId()).success,
+                  "Malformed and cancelled IDs are refused");
+
+            // 7.3: Users are registered once for all partitions
+            System.out.println("  7.3: Users...");
+            check(engine.authenticate("alice", "pw", "CUSTOMER") != null, "A registered user signs in");
+            check(engine.registerUser("alice", "other", "CUSTOMER") == null, "A name is taken only once");
+        } finally {
+            engine.shutdown();
+            deleteDir(dir);
+        }
+    }
+
+    // ==================== TEST 8: Concurrent Removal ====================
+    private static void test8_ConcurrentRemoval() throws Exception {
+        System.out.println("\n[TEST 8] Movie and Showtime Removal Under Contention");
+        System.out.println("--------------------------------------------------");
+
+        File dir = tempDir();
+        try {
+            BookingService service = newService(dir);
+            User alice = service.registerUser("alice", "pw", "CUSTOMER");
+            BookingStatistics statistics = service.statistics();
+            long movies = statistics.movieCount();
+            long showtimes = statistics.showtimeCount();
+            int rounds = 200;
+            AtomicInteger movieWins = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(12);
+            for (int round = 0; round < rounds; round++) {
+                // A movie with four showtimes of two bookings each, removed three times over
+                // while its showtimes are removed and its bookings cancelled
+                Movie movie = service.addMovie("Doomed " + round, 120);
+                CountDownLatch startLatch = new CountDownLatch(1);
+                List<Runnable> calls = new ArrayList<>();
+                for (int s = 0; s < 4; s++) {
+                    Showtime showtime = service.addShowtime(movie.movieId, LocalDateTime.now().plusDays(1), 10, "A");
+                    service.book(showtime.showtimeId, List.of("A1"), alice.userId);
+                    String bookingId = service.book(showtime.showtimeId, List.of("A2"), alice.userId).booking.bookingId();
+                    calls.add(() -> rejected(() -> service.removeShowtime(showtime.showtimeId)));
+                    calls.add(() -> service.cancel(bookingId));
+                }
+                for (int r = 0; r < 3; r++) {
+                    calls.add(() -> {
+                        if (!rejected(() -> service.removeMovie(movie.movieId))) {
+                            movieWins.incrementAndGet();
+                        }
+                    });
+                }
+                List<Future<?>> futures = new ArrayList<>();
+                for (Runnable call : calls) {
+                    futures.add(executor.submit(() -> {
+                        startLatch.await();
+                        call.run();
+                        return null;
+                    }));
+                }
+                startLatch.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+            executor.shutdown();
+            check(movieWins.get() == rounds, "Each movie is removed exactly once (" + movieWins + " of " + rounds + ")");
+            check(statistics.movieCount() == movies && statistics.showtimeCount() == showtimes,
+                  "Movie and showtime counts are back where they started");
+            check(statistics.bookingCount() == service.getBookings().liveCount()
+                  && statistics.seatsBooked() == service.getBookings().totalSeatsBooked(),
+                  "Booking totals match the store (" + statistics.bookingCount() + " bookings)");
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    // ==================== TEST 9: Booking Store Parity ====================
+    private static void test9_StoreParity() {
+        System.out.println("\n[TEST 9] Heap and Off-Heap Booking Stores Agree");
+        System.out.println("--------------------------------------------------");
+
+        // 9.1: The same appends and removes on both stores, past the off-heap index's first
+        // resize, with IDs spread out so probe runs wrap
+        System.out.println("  9.1: Append, Remove and Lookup...");
+        BookingStore heap = new BookingTable();
+        BookingStore offHeap = new OffHeapBookingStore();
+        Random random = new Random(29);
+        LocalDateTime time = LocalDateTime.of(2026, 1, 1, 12, 0);
+        List<Long> appended = new ArrayList<>();
+        long id = 1;
+        for (int i = 0; i < 10_000; i++) {
+            id += 1 + random.nextInt(1000);
+            int[] seats = {random.nextInt(50), 50 + random.nextInt(50)};
+            heap.append(id, i % 7, i % 13, i % 17, seats, time.plusMinutes(i));
+            offHeap.append(id, i % 7, i % 13, i % 17, seats, time.plusMinutes(i));
+            appended.add(id);
+            if (random.nextInt(3) == 0) {
+                int row = heap.rowOf(appended.get(random.nextInt(appended.size())));
+                heap.remove(row);
+                offHeap.remove(row);
+            }
+        }
+        check(storesAgree(heap, offHeap), "Both stores hold the same rows (" + heap.size() + " rows, " +
+              heap.liveCount() + " live)");
+        boolean lookupsAgree = true;
+        for (int i = 0; i < 2000; i++) {
+            long probe = random.nextInt((int) id + 1);
+            int row = heap.rowOf(probe);
+            lookupsAgree &= row == offHeap.rowOf(probe) && (row < 0 || heap.id(row) == probe)
+                            && (heap.find(probe) == null) == (offHeap.find(probe) == null);
+        }
+        check(lookupsAgree, "rowOf and find agree for present, cancelled and absent IDs");
+
+        // 9.2: A cancelled booking keeps its ID - appending it again is refused by both
+        System.out.println("  9.2: Cancelled IDs Stay Taken...");
+        long cancelledId = -1;
+        for (long candidate : appended) {
+            if (!heap.isLive(heap.rowOf(candidate))) {
+                cancelledId = candidate;
+                break;
+            }
+        }
+        check(cancelledId > 0 && refusedAgain(heap, cancelledId, time) && refusedAgain(offHeap, cancelledId, time),
+              "Both stores refuse to append a cancelled booking's ID again");
+
+        // 9.3: Cleared stores start over alike
+        System.out.println("  9.3: Clear...");
+        heap.clear();
+        offHeap.clear();
+        heap.append(appended.get(0), 0, 0, 0, new int[] {1}, time);
+        offHeap.append(appended.get(0), 0, 0, 0, new int[] {1}, time);
+        check(storesAgree(heap, offHeap) && heap.size() == 1 && offHeap.rowOf(appended.get(1)) < 0,
+              "After clear both stores hold only the new row");
+    }
+
+    // ==================== TEST 10: Batch Booking ====================
+    private static void test10_BatchBooking() throws Exception {
+        System.out.println("\n[TEST 10] Batch Results Order and Saves");
+        System.out.println("--------------------------------------------------");
+
+        File dir = tempDir();
+        try {
+            AtomicInteger bookingSaves = new AtomicInteger();
+            BookingService service = new BookingService(new CinemaStorage(dir.getPath()) {
+                @Override
+                public void saveBookings(IdTable ids, BookingStore bookings, Map<Long, String> requestKeys) {
+                    bookingSaves.incrementAndGet();
+                    super.saveBookings(ids, bookings, requestKeys);
+                }
+            });
+            service.load();
+            Movie movie = service.addMovie("Batched", 120);
+            List<Showtime> showtimes = new ArrayList<>();
+            for (int s = 0; s < 3; s++) {
+                showtimes.add(service.addShowtime(movie.movieId, LocalDateTime.now().plusDays(1 + s), 20, "A"));
+            }
+            User alice = service.registerUser("alice", "pw", "CUSTOMER");
+
+            // 10.1: Requests interleaved over three showtimes, with an unknown showtime and a
+            // seat taken earlier in the same batch - each result answers its own request
+            System.out.println("  10.1: Interleaved Showtimes...");
+            List<BookingRequest> requests = new ArrayList<>();
+            List<Boolean> expected = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                requests.add(new BookingRequest(showtimes.get(i % 3).showtimeId, List.of("A" + (i + 1)), alice.userId));
+                expected.add(true);
+            }
+            requests.add(5, new BookingRequest("S-missing", List.of("A1"), alice.userId));
+            expected.add(5, false);
+            requests.add(new BookingRequest(showtimes.get(0).showtimeId, List.of("A4"), alice.userId));
+            expected.add(false);
+            bookingSaves.set(0);
+            List<BookingResult> results = service.bookBatch(requests);
+            boolean inOrder = results.size() == requests.size();
+            for (int i = 0; inOrder && i < results.size(); i++) {
+                BookingResult result = results.get(i);
+                BookingRequest request = requests.get(i);
+                inOrder = result.success == expected.get(i);
+                if (inOrder && result.success) {
+                    Showtime showtime = service.getIdTable().showtime(result.booking.showtimeRef());
+                    inOrder = showtime.showtimeId.equals(request.showtimeId)
+                              && result.booking.seatLabels(showtime, ",").equals(String.join(",", request.seatNumbers));
+                }
+            }
+            check(inOrder, "Each of " + requests.size() + " results matches its request");
+            check(bookingSaves.get() == 1, "The batch is saved once (" + bookingSaves + " saves)");
+
+            // 10.2: A batch that books nothing writes nothing
+            System.out.println("  10.2: Nothing Booked...");
+            bookingSaves.set(0);
+            results = service.bookBatch(List.of(new BookingRequest(showtimes.get(1).showtimeId, List.of("A2"), alice.userId)));
+            check(!results.get(0).success && bookingSaves.get() == 0, "A batch of refused requests is not saved");
+
+            // 10.3: Two copies of a batch at once - every seat goes to exactly one of them
+            System.out.println("  10.3: Competing Batches...");
+            List<BookingRequest> contested = new ArrayList<>();
+            for (int i = 0; i < 24; i++) {
+                contested.add(new BookingRequest(showtimes.get(i % 3).showtimeId, List.of("A" + (13 + i / 3)), alice.userId));
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            CountDownLatch startLatch = new CountDownLatch(1);
+            List<Future<List<BookingResult>>> batches = new ArrayList<>();
+            for (int b = 0; b < 2; b++) {
+                batches.add(executor.submit(() -> {
+                    startLatch.await();
+                    return service.bookBatch(contested);
+                }));
+            }
+            startLatch.countDown();
+            List<BookingResult> first = batches.get(0).get();
+            List<BookingResult> second = batches.get(1).get();
+            executor.shutdown();
+            boolean exactlyOnce = true;
+            for (int i = 0; i < contested.size(); i++) {
+                exactlyOnce &= first.get(i).success != second.get(i).success;
+            }
+            check(exactlyOnce, "Each contested seat is booked by exactly one batch");
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    // ==================== TEST 11: Paged Listings ====================
+    private static void test11_PagedListings() throws Exception {
+        System.out.println("\n[TEST 11] Paging While Bookings Change");
+        System.out.println("--------------------------------------------------");
+
+        File dir = tempDir();
+        try {
+            BookingService service = newService(dir);
+            Movie movie = service.addMovie("Paged", 120);
+            Showtime settled = service.addShowtime(movie.movieId, LocalDateTime.now().plusDays(1), 100, "A");
+            Showtime churned = service.addShowtime(movie.movieId, LocalDateTime.now().plusDays(2), 100, "B");
+            User alice = service.registerUser("alice", "pw", "CUSTOMER");
+            User bob = service.registerUser("bob", "pw", "CUSTOMER");
+            List<Booking> originals = new ArrayList<>();
+            for (int i = 1; i <= 90; i++) {
+                originals.add(service.book(settled.showtimeId, List.of("A" + i), alice.userId).booking);
+                if (i % 9 == 0) {
+                    service.book(settled.showtimeId, List.of("A" + (90 + i / 9)), bob.userId);
+                }
+            }
+
+            // 11.1: Alice's listing paged over and over while a writer cancels every fourth of
+            // her bookings and books and cancels new ones - the untouched bookings come back
+            // exactly once per pass, in booking order
+            System.out.println("  11.1: Concurrent Inserts and Cancels...");
+            Set<String> stable = new HashSet<>();
+            for (int i = 0; i < originals.size(); i++) {
+                if (i % 4 != 0) {
+                    stable.add(originals.get(i).bookingId());
+                }
+            }
+            AtomicBoolean paging = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                Deque<String> recent = new ArrayDeque<>();
+                for (int i = 0; paging.get(); i++) {
+                    if (i % 4 == 0 && i < originals.size()) {
+                        service.cancel(originals.get(i).bookingId());
+                    }
+                    BookingResult result = service.book(churned.showtimeId, List.of("B" + (i % 100 + 1)), alice.userId);
+                    if (result.success) {
+                        recent.add(result.booking.bookingId());
+                    }
+                    if (recent.size() > 10) {
+                        service.cancel(recent.poll());
+                    }
+                }
+            });
+            writer.start();
+            boolean stablePasses = true;
+            boolean ordered = true;
+            for (int pass = 0; pass < 50; pass++) {
+                List<Booking> listed = new ArrayList<>();
+                String token = null;
+                do {
+                    BookingPage page = service.listBookingsForUser(alice.userId, token, 7);
+                    listed.addAll(page.bookings);
+                    token = page.nextPageToken;
+                } while (token != null);
+                Map<String, Integer> seen = new HashMap<>();
+                int lastRow = -1;
+                for (Booking booking : listed) {
+                    seen.merge(booking.bookingId(), 1, Integer::sum);
+                    ordered &= booking.row() > lastRow && booking.userRef() == alice.ref;
+                    lastRow = booking.row();
+                }
+                for (String bookingId : stable) {
+                    stablePasses &= seen.getOrDefault(bookingId, 0) == 1;
+                }
+            }
+            paging.set(false);
+            writer.join();
+            check(stablePasses, "Every untouched booking is listed exactly once in each of 50 passes");
+            check(ordered, "Pages hold only Alice's bookings, in booking order");
+
+            // 11.2: Tokens from another listing are refused, hand-made ones included
+            System.out.println("  11.2: Foreign Tokens...");
+            String bobToken = service.listBookingsForUser(bob.userId, null, 5).nextPageToken;
+            String showtimeToken = service.listBookingsForShowtime(settled.showtimeId, null, 5).nextPageToken;
+            Booking bobs = service.listBookingsForUser(bob.userId, null, 1).bookings.get(0);
+            String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                ("U|" + alice.ref + "|" + bobs.row() + "|" + bobs.id()).getBytes("UTF-8"));
+            check(rejected(() -> service.listBookingsForUser(alice.userId, bobToken, 5)),
+                  "Bob's token is refused on Alice's listing");
+            check(rejected(() -> service.listBookingsForUser(alice.userId, showtimeToken, 5)),
+                  "A showtime listing's token is refused on a user's listing");
+            check(rejected(() -> service.listBookingsForUser(alice.userId, forged, 5)),
+                  "A token naming Alice but pointing at Bob's booking is refused");
+            check(rejected(() -> service.listBookingsForUser(alice.userId, "not-a-token", 5)),
+                  "A malformed token is refused");
+
+            // 11.3: A token whose last booking is cancelled and saved carries on from the same
+            // place after a restart
+            System.out.println("  11.3: Token Across a Restart...");
+            BookingPage first = service.listBookingsForUser(alice.userId, null, 9);
+            service.cancel(first.bookings.get(first.bookings.size() - 1).bookingId());
+            List<String> rest = pagedIds(service, alice.userId, first.nextPageToken);
+            service.save();
+            BookingService restarted = newService(dir);
+            check(!rest.isEmpty() && pagedIds(restarted, alice.userId, first.nextPageToken).equals(rest),
+                  "The rest of the listing is the same after a restart (" + rest.size() + " bookings)");
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    // ==================== TEST 12: Booking IDs After a Crash ====================
+    private static void test12_IdsAfterCrash() throws Exception {
+        System.out.println("\n[TEST 12] Booking IDs Stay Unique Across a Crash");
+        System.out.println("--------------------------------------------------");
+
+        File dir = tempDir();
+        try {
+            BookingService crashed = newService(dir);
+            Movie movie = crashed.addMovie("Crashed", 120);
+            List<Showtime> showtimes = new ArrayList<>();
+            for (int s = 0; s < 4; s++) {
+                showtimes.add(crashed.addShowtime(movie.movieId, LocalDateTime.now().plusDays(1 + s), 100, "A"));
+            }
+            User alice = crashed.registerUser("alice", "pw", "CUSTOMER");
+            crashed.save();
+
+            // 12.1: Platform threads book from their ID blocks and the bookings are saved; then
+            // virtual threads book one ID at a time and the process dies before saving or
+            // flushing its allocators
+            System.out.println("  12.1: Restart Without flush()...");
+            Set<Long> issued = ConcurrentHashMap.newKeySet();
+            bookFromThreads(crashed, showtimes, alice, 1, 20, Thread.ofPlatform().factory(), issued);
+            crashed.save();
+            bookFromThreads(crashed, showtimes, alice, 21, 40, Thread.ofVirtual().factory(), issued);
+
+            BookingService restarted = newService(dir);
+            Set<Long> reissued = ConcurrentHashMap.newKeySet();
+            bookFromThreads(restarted, showtimes, alice, 41, 60, Thread.ofPlatform().factory(), reissued);
+            bookFromThreads(restarted, showtimes, alice, 61, 80, Thread.ofVirtual().factory(), reissued);
+            check(issued.size() == 160 && reissued.size() == 160, "Every booking got its own ID before and after the restart");
+            Set<Long> overlap = new HashSet<>(issued);
+            overlap.retainAll(reissued);
+            check(overlap.isEmpty(), "No ID handed out before the crash is handed out again, saved or not");
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static void check(boolean passed, String description) {
+        if (passed) {
+            passedChecks.incrementAndGet();
+            System.out.println("    [PASS] " + description);
+        } else {
+            failedChecks.incrementAndGet();
+            System.out.println("    [FAIL] " + description);
+        }
+    }
+
+    // Requests of a user admitted before the first refusal, releasing each right away
+    private static int admitInARow(AdmissionController controller, String userId, int attempts) {
+        int admitted = 0;
+        while (admitted < attempts && controller.tryAcquire(userId) == AdmissionController.Decision.ADMITTED) {
+            controller.release();
+            admitted++;
+        }
+        return admitted;
+    }
+
+    // Book seats from..to of each showtime, one thread per showtime, adding the booking IDs
+    private static void bookFromThreads(BookingService service, List<Showtime> showtimes, User user,
+                                        int from, int to, ThreadFactory factory, Set<Long> bookingIds)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (Showtime showtime : showtimes) {
+            threads.add(factory.newThread(() -> {
+                for (int seat = from; seat <= to; seat++) {
+                    BookingResult result = service.book(showtime.showtimeId, List.of("A" + seat), user.userId);
+                    if (result.success) {
+                        bookingIds.add(result.booking.id());
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    // IDs of a user's bookings from a page token to the end of the listing
+    private static List<String> pagedIds(BookingService service, String userId, String token) {
+        List<String> bookingIds = new ArrayList<>();
+        do {
+            BookingPage page = service.listBookingsForUser(userId, token, 7);
+            for (Booking booking : page.bookings) {
+                bookingIds.add(booking.bookingId());
+            }
+            token = page.nextPageToken;
+        } while (token != null);
+        return bookingIds;
+    }
+
+    // Whether two stores hold the same rows, column by column
+    private static boolean storesAgree(BookingStore a, BookingStore b) {
+        if (a.size() != b.size() || a.liveCount() != b.liveCount() || a.maxId() != b.maxId()) {
+            return false;
+        }
+        for (int row = 0; row < a.size(); row++) {
+            if (a.id(row) != b.id(row) || a.isLive(row) != b.isLive(row) || a.movieRef(row) != b.movieRef(row) ||
+                a.showtimeRef(row) != b.showtimeRef(row) || a.userRef(row) != b.userRef(row) ||
+                a.bookedAt(row) != b.bookedAt(row) || a.seatCount(row) != b.seatCount(row) ||
+                a.nextOfUser(row) != b.nextOfUser(row) || a.nextOfShowtime(row) != b.nextOfShowtime(row) ||
+                a.rowOf(a.id(row)) != row || b.rowOf(b.id(row)) != row) {
+                return false;
+            }
+            for (int i = 0; i < a.seatCount(row); i++) {
+                if (a.seatAt(row, i) != b.seatAt(row, i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean refusedAgain(BookingStore store, long id, LocalDateTime time) {
+        try {
+            store.append(id, 0, 0, 0, new int[] {1}, time);
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
+
+    // Whether the call is turned away with an IllegalArgumentException
+    private static boolean rejected(Runnable call) {
+        try {
+            call.run();
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    // A service on an empty directory that saves only when asked
+    private static BookingService newService(File dir) {
+        BookingService service = new BookingService(new CinemaStorage(dir.getPath()));
+        service.load();
+        service.setAutoSave(false);
+        return service;
+    }
+
+    private static String snapshot(BookingService service) throws IOException {
+        StringWriter text = new StringWriter();
+        try (BufferedWriter writer = new BufferedWriter(text)) {
+            service.writeSnapshot(writer);
+        }
+        return text.toString();
+    }
+
+    // Booked flags of every seat, by showtime
+    private static Map<String, String> seatMap(BookingService service) {
+        Map<String, String> seats = new TreeMap<>();
+        for (Movie movie : service.getMovies()) {
+            for (Showtime showtime : movie.showtimes) {
+                StringBuilder flags = new StringBuilder();
+                for (Seat seat : showtime.seats) {
+                    flags.append(seat.isBooked ? 'X' : '.');
+                }
+                seats.put(showtime.showtimeId, flags.toString());
+            }
+        }
+        return seats;
+    }
+
+    private static Set<String> bookingIds(BookingService service) {
+        Set<String> ids = new TreeSet<>();
+        for (Booking booking : service.getBookings()) {
+            ids.add(booking.bookingId());
+        }
+        return ids;
+    }
+
+    private static File tempDir() throws IOException {
+        return Files.createTempDirectory("cinema-test").toFile();
+    }
+
+    // Shards keep their data in subdirectories
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+}
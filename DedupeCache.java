@@ -0,0 +1,142 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Client request keys of recent bookings, so a retried request gets the booking it
+// already made instead of a second one.
+//
+// Keys live in two generations of concurrent maps. New keys go into the current one;
+// when it is full or as old as the time-to-live it becomes the previous one and the old
+// previous one is dropped whole, so expiry costs nothing per key and memory is bounded
+// at two generations. Under a flood of keys the size bound wins and keys can be
+// forgotten before their time-to-live is up.
+public class DedupeCache {
+    private final long ttlMillis;
+    private final int generationSize;
+    private volatile Map<String, Entry> current = new ConcurrentHashMap<>();
+    private volatile Map<String, Entry> previous = new ConcurrentHashMap<>();
+    private volatile long currentStartedAt = System.currentTimeMillis();
+
+    // Constructor - keeps keys for ttlMillis, at most 2 * generationSize of them
+    public DedupeCache(long ttlMillis, int generationSize) {
+        if (ttlMillis <= 0 || generationSize <= 0) {
+            throw new IllegalArgumentException("Dedupe limits must be positive");
+        }
+        this.ttlMillis = ttlMillis;
+        this.generationSize = generationSize;
+    }
+
+    // Register a key for a request about to run. Returns null if the caller is first and
+    // must finish with complete() or abandon(), otherwise the earlier request's entry.
+    public Entry claim(String key, Entry mine) {
+        rotateIfDue();
+        long now = System.currentTimeMillis();
+        Entry earlier = previous.get(key);
+        if (earlier != null && !earlier.isExpired(now, ttlMillis)) {
+            return earlier;
+        }
+        while (true) {
+            Map<String, Entry> generation = current;
+            earlier = generation.putIfAbsent(key, mine);
+            if (earlier == null) {
+                // A rotation since the check above may have moved the key to previous
+                earlier = previous.get(key);
+                if (earlier != null && earlier != mine && !earlier.isExpired(now, ttlMillis)) {
+                    generation.remove(key, mine);
+                    return earlier;
+                }
+                return null;
+            }
+            if (!earlier.isExpired(now, ttlMillis) || !generation.remove(key, earlier)) {
+                return earlier;
+            }
+        }
+    }
+
+    // The request holding a claim booked the given booking
+    public void complete(Entry mine, long bookingId) {
+        mine.bookingId.complete(bookingId);
+    }
+
+    // The request holding a claim failed - forget the key so a retry runs again
+    public void abandon(String key, Entry mine) {
+        current.remove(key, mine);
+        previous.remove(key, mine);
+        mine.bookingId.complete(-1L);
+    }
+
+    // Remember a key booked elsewhere - loaded from disk or replicated - at its booking time
+    public void restore(String key, long bookingId, long createdAt) {
+        if (System.currentTimeMillis() - createdAt > ttlMillis) {
+            return;
+        }
+        Entry entry = new Entry(createdAt);
+        entry.bookingId.complete(bookingId);
+        rotateIfDue();
+        current.putIfAbsent(key, entry);
+    }
+
+    // Booking ID to request key for every completed, unexpired key
+    public Map<Long, String> keysByBooking() {
+        Map<Long, String> keys = new HashMap<>();
+        long now = System.currentTimeMillis();
+        addCompleted(previous, keys, now);
+        addCompleted(current, keys, now);
+        return keys;
+    }
+
+    public int size() {
+        return current.size() + previous.size();
+    }
+
+    public synchronized void clear() {
+        previous = new ConcurrentHashMap<>();
+        current = new ConcurrentHashMap<>();
+        currentStartedAt = System.currentTimeMillis();
+    }
+
+    private void addCompleted(Map<String, Entry> generation, Map<Long, String> keys, long now) {
+        for (Map.Entry<String, Entry> entry : generation.entrySet()) {
+            Entry value = entry.getValue();
+            long bookingId = value.bookingId.getNow(-1L);
+            if (bookingId >= 0 && !value.isExpired(now, ttlMillis)) {
+                keys.put(bookingId, entry.getKey());
+            }
+        }
+    }
+
+    private void rotateIfDue() {
+        if (current.size() < generationSize && System.currentTimeMillis() - currentStartedAt < ttlMillis) {
+            return;
+        }
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (current.size() >= generationSize || now - currentStartedAt >= ttlMillis) {
+                previous = current;
+                current = new ConcurrentHashMap<>();
+                currentStartedAt = now;
+            }
+        }
+    }
+
+    // One request key: when it was first seen and, once known, the booking it made
+    public static class Entry {
+        final long createdAt;
+        final CompletableFuture<Long> bookingId = new CompletableFuture<>();
+
+        // Constructor
+        public Entry(long createdAt) {
+            this.createdAt = createdAt;
+        }
+
+        // Booking made by the request, -1 if it failed. Waits while it is still running.
+        public long bookingId() {
+            return bookingId.join();
+        }
+
+        boolean isExpired(long now, long ttlMillis) {
+            return now - createdAt > ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// The most frequent keys of a stream over a sliding time window, in bounded memory.
+//
+// The window is split into panes of equal length. Each pane counts its keys in a
+// Count-Min sketch - a few rows of counters, each key adding to one counter per row and
+// reading back the smallest - and keeps a short list of candidate keys whose estimate was
+// among the largest seen. A key's count is the sum over the panes still in the window, and
+// the top keys are the best of the panes' candidates, so memory and query cost depend
+// only on the sketch size and k, never on how many distinct keys went past. The oldest
+// pane is replaced whole as the window slides. Estimates can be high, never low.
+public class HeavyHitters {
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1024; // power of two
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL,
+                                         0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+    private final int k;
+    private final int candidatesPerPane;
+    private final long paneMillis;
+    private final AtomicReferenceArray<Pane> panes;
+
+    // Constructor - the top k keys over windowMillis, which slides in paneCount steps
+    public HeavyHitters(int k, long windowMillis, int paneCount) {
+        if (k <= 0 || paneCount <= 0 || windowMillis < paneCount) {
+            throw new IllegalArgumentException("Heavy hitter limits must be positive");
+        }
+        this.k = k;
+        this.candidatesPerPane = 4 * k;
+        this.paneMillis = windowMillis / paneCount;
+        this.panes = new AtomicReferenceArray<>(paneCount);
+    }
+
+    // Count occurrences of a key now
+    public void add(long key, long count) {
+        long period = System.currentTimeMillis() / paneMillis;
+        int slot = (int) (period % panes.length());
+        Pane pane = panes.get(slot);
+        while (pane == null || pane.period < period) {
+            Pane fresh = new Pane(period);
+            if (panes.compareAndSet(slot, pane, fresh)) {
+                pane = fresh;
+            } else {
+                pane = panes.get(slot);
+            }
+        }
+        if (pane.period == period) {
+            pane.add(key, count);
+        }
+    }
+
+    // Estimated occurrences of a key within the window
+    public long estimate(long key) {
+        long oldest = oldestPeriod();
+        long total = 0;
+        for (int i = 0; i < panes.length(); i++) {
+            Pane pane = panes.get(i);
+            if (pane != null && pane.period >= oldest) {
+                total += pane.estimate(key);
+            }
+        }
+        return total;
+    }
+
+    // Up to k keys with the highest estimates within the window, highest first
+    public List<Hitter> top() {
+        long oldest = oldestPeriod();
+        List<Pane> live = new ArrayList<>();
+        Set<Long> keys = new HashSet<>();
+        for (int i = 0; i < panes.length(); i++) {
+            Pane pane = panes.get(i);
+            if (pane != null && pane.period >= oldest) {
+                live.add(pane);
+                keys.addAll(pane.candidates.keySet());
+            }
+        }
+        List<Hitter> hitters = new ArrayList<>(keys.size());
+        for (long key : keys) {
+            long total = 0;
+            for (Pane pane : live) {
+                total += pane.estimate(key);
+            }
+            hitters.add(new Hitter(key, total));
+        }
+        hitters.sort((a, b) -> Long.compare(b.count, a.count));
+        return hitters.size() > k ? new ArrayList<>(hitters.subList(0, k)) : hitters;
+    }
+
+    public void clear() {
+        for (int i = 0; i < panes.length(); i++) {
+            panes.set(i, null);
+        }
+    }
+
+    private long oldestPeriod() {
+        return System.currentTimeMillis() / paneMillis - panes.length() + 1;
+    }
+
+    private static int index(long key, int row) {
+        long h = (key ^ SEEDS[row]) * 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h & (WIDTH - 1);
+    }
+
+    // Counts of one pane of the window
+    private class Pane {
+        final long period;
+        final AtomicLongArray counters = new AtomicLongArray(DEPTH * WIDTH);
+        final Map<Long, Boolean> candidates = new ConcurrentHashMap<>();
+        volatile long floor; // smallest candidate estimate at the last eviction
+
+        // Constructor
+        Pane(long period) {
+            this.period = period;
+        }
+
+        void add(long key, long count) {
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                estimate = Math.min(estimate, counters.addAndGet(row * WIDTH + index(key, row), count));
+            }
+            // Most keys are neither candidates nor big enough to become one - no lock for them
+            if (estimate < floor || candidates.containsKey(key)) {
+                return;
+            }
+            synchronized (this) {
+                candidates.put(key, Boolean.TRUE);
+                if (candidates.size() > candidatesPerPane) {
+                    evictSmallest();
+                }
+            }
+        }
+
+        long estimate(long key) {
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                estimate = Math.min(estimate, counters.get(row * WIDTH + index(key, row)));
+            }
+            return estimate;
+        }
+
+        // Caller holds the pane's monitor
+        private void evictSmallest() {
+            long smallestKey = 0;
+            long smallest = Long.MAX_VALUE;
+            long nextSmallest = Long.MAX_VALUE;
+            for (long candidate : candidates.keySet()) {
+                long estimate = estimate(candidate);
+                if (estimate < smallest) {
+                    nextSmallest = smallest;
+                    smallest = estimate;
+                    smallestKey = candidate;
+                } else if (estimate < nextSmallest) {
+                    nextSmallest = estimate;
+                }
+            }
+            candidates.remove(smallestKey);
+            floor = nextSmallest;
+        }
+    }
+
+    // A key and its estimated count
+    public static class Hitter {
+        public final long key;
+        public final long count;
+
+        // Constructor
+        public Hitter(long key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Micro-benchmarks for the hot paths of the Cinema Booking System
+ * Measures: throughput (ops/s), latency (ns/op) and allocation (bytes/op) of seat
+ * operations, lookups, booking listings and file I/O, single-threaded and under contention
+ *
+ * Usage: java HotPathBenchmark, with optional system properties
+ *   -Dbench.seats=100             seats per showtime (comma-separated values run each)
+ *   -Dbench.showtimes=1000        showtimes in the catalog
+ *   -Dbench.bookings=50000        bookings made before measuring
+ *   -Dbench.threads=N             threads in the contention benchmarks (default: cores, at least 2)
+ *   -Dbench.measureMillis=500     length of each of the 3 measured iterations (2 warmups before)
+ *   -Dbench.save=file             write the results as a baseline
+ *   -Dbench.compare=file          compare with a baseline; exits with 1 on a regression
+ *   -Dbench.tolerance=0.10        slowdown or extra allocation allowed before it counts
+ */
+public class HotPathBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int MEASURED_ITERATIONS = 3;
+
+    private static final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long measureMillis;
+    private static int threadCount;
+    private static final Map<String, double[]> results = new LinkedHashMap<>(); // ops/s, B/op
+
+    // One benchmarked operation; i counts calls per thread, t is the thread number
+    private interface Operation {
+        void run(int t, int i);
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Registration is not measured - cheap hashes keep the setup fast
+        if (System.getProperty("cinema.passwordIterations") == null) {
+            System.setProperty("cinema.passwordIterations", "1000");
+        }
+        measureMillis = Long.getLong("bench.measureMillis", 500);
+        threadCount = Integer.getInteger("bench.threads",
+                                         Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+        System.out.println("================================================================");
+        System.out.println("    CINEMA BOOKING SYSTEM - HOT PATH BENCHMARKS");
+        System.out.println("================================================================");
+        System.out.printf("%-42s %10s %10s %10s%n", "Benchmark", "ops/s", "ns/op", "B/op");
+
+        for (int seats : intList("bench.seats", "100")) {
+            for (int showtimes : intList("bench.showtimes", "1000")) {
+                for (int bookings : intList("bench.bookings", "50000")) {
+                    run(seats, showtimes, bookings);
+                }
+            }
+        }
+
+        if (System.getProperty("bench.save") != null) {
+            saveBaseline(System.getProperty("bench.save"));
+        }
+        if (System.getProperty("bench.compare") != null
+                && !compareBaseline(System.getProperty("bench.compare"))) {
+            System.exit(1);
+        }
+    }
+
+    // ==================== Benchmarks ====================
+
+    private static void run(int seats, int showtimes, int bookings) throws Exception {
+        // The service caps showtimes at 100 seats; bookings are capped by the seats there are
+        int serviceSeats = Math.min(seats, 100);
+        bookings = (int) Math.min(bookings, (long) serviceSeats * showtimes);
+        String params = "seats=" + seats + " showtimes=" + showtimes + " bookings=" + bookings;
+        System.out.println("\n[" + params + ", threads=" + threadCount + "]");
+
+        File dir = Files.createTempDirectory("cinema-bench").toFile();
+        try {
+            CinemaStorage storage = new CinemaStorage(dir.getPath());
+            BookingService service = new BookingService(storage);
+            service.load();
+            service.setAutoSave(false);
+            List<Showtime> catalog = buildCatalog(service, showtimes, serviceSeats);
+            List<User> users = new ArrayList<>();
+            for (int u = 0; u < Math.max(1, bookings / 100); u++) {
+                users.add(service.registerUser("bench" + u, "pw", "CUSTOMER"));
+            }
+            for (int b = 0; b < bookings; b++) {
+                Showtime showtime = catalog.get(b % showtimes);
+                service.book(showtime.showtimeId, List.of(showtime.seatLabel(b / showtimes)),
+                             users.get(b % users.size()).userId);
+            }
+            service.save();
+
+            // Seat operations on a standalone showtime with the requested seat count
+            Showtime single = new Showtime("BENCH", LocalDateTime.now().plusDays(1), seats);
+            String[] labels = new String[seats];
+            for (int s = 0; s < seats; s++) {
+                labels[s] = "A" + (s + 1);
+                single.seats.add(new Seat(labels[s]));
+            }
+            bench(params, "showtime.reserveAndCancelSeat", 1, (t, i) -> {
+                String label = labels[i % seats];
+                single.reserveSeat(label);
+                single.cancelSeat(label);
+            });
+            bench(params, "showtime.isSeatAvailable", 1, (t, i) -> single.isSeatAvailable(labels[i % seats]));
+            bench(params, "showtime.getAvailableSeats", 1, (t, i) -> single.getAvailableSeats());
+            bench(params, "showtime.getAvailableSeats.changed", 1, (t, i) -> {
+                single.reserveSeatAt(0);
+                single.cancelSeatAt(0);
+                single.getAvailableSeats();
+            });
+
+            // Lookups and listings
+            IdTable ids = service.getIdTable();
+            bench(params, "service.findShowtime", 1,
+                  (t, i) -> ids.findShowtime(catalog.get(i % showtimes).showtimeId));
+            bench(params, "service.bookingsForUser", 1,
+                  (t, i) -> service.bookingsForUser(users.get(i % users.size()).userId));
+
+            // File I/O
+            List<Movie> movies = service.getMovies();
+            bench(params, "storage.saveMovies", 1, (t, i) -> storage.saveMovies(movies));
+            bench(params, "storage.loadMovies", 1, (t, i) -> storage.loadMovies());
+            bench(params, "storage.loadBookings", 1, (t, i) ->
+                storage.loadBookings(ids, users, BookingStore.create(), new HashMap<>()));
+
+            // Contention: every thread books and cancels a seat of its own in one showtime,
+            // then each thread in a showtime of its own
+            Showtime hot = catalog.get(0);
+            freeSeats(service, hot);
+            bench(params, "contended.bookAndCancel.sameShowtime", threadCount, (t, i) -> {
+                int seat = t + threadCount * (i % Math.max(1, serviceSeats / threadCount));
+                bookAndCancel(service, hot, hot.seatLabel(seat % serviceSeats), users.get(t % users.size()));
+            });
+            for (int t = 0; t < threadCount && t < showtimes; t++) {
+                freeSeats(service, catalog.get(t));
+            }
+            bench(params, "contended.bookAndCancel.ownShowtime", threadCount, (t, i) -> {
+                Showtime own = catalog.get(t % showtimes);
+                bookAndCancel(service, own, own.seatLabel(i % serviceSeats), users.get(t % users.size()));
+            });
+            // Readers of a showtime while thread 0 keeps changing its seats
+            bench(params, "contended.availability.oneWriter", threadCount, (t, i) -> {
+                if (t == 0) {
+                    bookAndCancel(service, hot, hot.seatLabel(i % serviceSeats), users.get(0));
+                } else {
+                    hot.availability();
+                }
+            });
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static List<Showtime> buildCatalog(BookingService service, int showtimes, int seats) {
+        List<Showtime> catalog = new ArrayList<>();
+        Movie movie = null;
+        for (int s = 0; s < showtimes; s++) {
+            if (s % 10 == 0) {
+                movie = service.addMovie("Benchmark Movie " + (s / 10), 120);
+            }
+            catalog.add(service.addShowtime(movie.movieId, LocalDateTime.now().plusDays(1 + s % 30),
+                                             seats, "A"));
+        }
+        return catalog;
+    }
+
+    private static void freeSeats(BookingService service, Showtime showtime) {
+        List<String> bookingIds = new ArrayList<>();
+        for (Booking booking : service.getBookings()) {
+            if (booking.showtimeRef() == showtime.ref) {
+                bookingIds.add(booking.bookingId());
+            }
+        }
+        for (String bookingId : bookingIds) {
+            service.cancel(bookingId);
+        }
+    }
+
+    private static void bookAndCancel(BookingService service, Showtime showtime, String seat, User user) {
+        BookingResult result = service.book(showtime.showtimeId, List.of(seat), user.userId);
+        if (result.success) {
+            service.cancel(result.booking.bookingId());
+        }
+    }
+
+    // Run an operation on the given number of threads: warmup iterations, then measured
+    // ones. Prints and records the mean throughput and allocation of the measured ones.
+    private static void bench(String params, String name, int threadCount, Operation operation)
+            throws InterruptedException {
+        double opsPerSecond = 0;
+        double bytesPerOp = 0;
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASURED_ITERATIONS; iteration++) {
+            long[] result = iterate(threadCount, operation);
+            if (iteration >= WARMUP_ITERATIONS) {
+                opsPerSecond += result[0] * 1e9 / result[2] / MEASURED_ITERATIONS;
+                bytesPerOp += (double) result[1] / Math.max(1, result[0]) / MEASURED_ITERATIONS;
+            }
+        }
+        String label = threadCount > 1 ? name + " x" + threadCount : name;
+        System.out.printf("%-42s %10.0f %10.1f %10.1f%n", label, opsPerSecond,
+                          1e9 * threadCount / opsPerSecond, bytesPerOp);
+        results.put(name + " " + params + " threads=" + threadCount, new double[] {opsPerSecond, bytesPerOp});
+    }
+
+    // One iteration: {operations, bytes allocated, elapsed nanos}
+    private static long[] iterate(int threadCount, Operation operation) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        LongAdder allocated = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+                int i = 0;
+                // Check the clock every 64 calls so it does not dominate cheap operations
+                do {
+                    for (int k = 0; k < 64; k++) {
+                        operation.run(thread, i++);
+                    }
+                } while (System.nanoTime() < deadline[0]);
+                allocated.add(threads.getCurrentThreadAllocatedBytes() - bytesBefore);
+                operations.add(i);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long begin = System.nanoTime();
+        deadline[0] = begin + measureMillis * 1_000_000;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return new long[] {operations.sum(), allocated.sum(), System.nanoTime() - begin};
+    }
+
+    private static List<Integer> intList(String property, String fallback) {
+        List<Integer> values = new ArrayList<>();
+        for (String value : System.getProperty(property, fallback).split(",")) {
+            values.add(Integer.parseInt(value.trim()));
+        }
+        return values;
+    }
+
+    private static void saveBaseline(String file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            for (Map.Entry<String, double[]> entry : results.entrySet()) {
+                writer.println(entry.getKey() + "|" + entry.getValue()[0] + "|" + entry.getValue()[1]);
+            }
+        }
+        System.out.println("\nBaseline saved to " + file);
+    }
+
+    // True when no benchmark got slower or allocates more than the tolerance allows
+    private static boolean compareBaseline(String file) throws IOException {
+        double tolerance = Double.parseDouble(System.getProperty("bench.tolerance", "0.10"));
+        boolean passed = true;
+        System.out.println("\nCompared with " + file + ":");
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\\|");
+                double[] now = results.get(parts[0]);
+                if (now == null) {
+                    continue;
+                }
+                double baseOps = Double.parseDouble(parts[1]);
+                double baseBytes = Double.parseDouble(parts[2]);
+                // A few bytes per operation is measurement noise
+                boolean slower = now[0] < baseOps * (1 - tolerance);
+                boolean heavier = now[1] > baseBytes * (1 + tolerance) + 16;
+                if (slower || heavier) {
+                    passed = false;
+                    System.out.printf("  REGRESSION %s: %.0f -> %.0f ops/s, %.1f -> %.1f B/op%n",
+                                      parts[0], baseOps, now[0], baseBytes, now[1]);
+                }
+            }
+        }
+        System.out.println(passed ? "  No regressions." : "  Regressions found.");
+        return passed;
+    }
+}
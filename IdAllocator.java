@@ -0,0 +1,170 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Hands out unique, increasing numeric IDs without a shared lock on the fast path.
+// Each thread takes a block of IDs from a global counter and then allocates from its
+// own block. The global counter leases ranges ahead of use and persists the lease
+// ceiling (the high-water mark), so after a restart allocation simply continues from
+// the mark without scanning existing data. IDs inside an unused lease are skipped.
+// Leasing writes the mark file, which virtual threads may wait on, so it locks with a
+// ReentrantLock.
+public class IdAllocator {
+    private final String name;
+    private final int blockSize;
+    private final long leaseSize;
+    private final MarkFile marks;
+
+    private final AtomicLong next;
+    private volatile long leasedUpTo;
+    private final ReentrantLock leaseLock = new ReentrantLock();
+    private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[2]); // [next, end)
+
+    // Constructor - starts from the persisted mark for this name.
+    // leaseSize is how many IDs to reserve on disk beyond the current block.
+    public IdAllocator(String name, int blockSize, long leaseSize, MarkFile marks) {
+        this.name = name;
+        this.blockSize = blockSize;
+        this.leaseSize = leaseSize;
+        this.marks = marks;
+        long mark = Math.max(marks.get(name), 1);
+        this.next = new AtomicLong(mark);
+        this.leasedUpTo = mark;
+    }
+
+    // Allocate the next ID
+    public long next() {
+        if (Thread.currentThread().isVirtual()) {
+            // Virtual threads are one per request, so a block would be abandoned
+            // after its first ID - take single IDs from the counter instead
+            long id = next.getAndIncrement();
+            ensureLeased(id + 1);
+            return id;
+        }
+        long[] current = block.get();
+        if (current[0] == current[1]) {
+            long start = next.getAndAdd(blockSize);
+            ensureLeased(start + blockSize);
+            current[0] = start;
+            current[1] = start + blockSize;
+        }
+        return current[0]++;
+    }
+
+    // Make sure IDs up to and including value are never handed out again
+    public void advancePast(long value) {
+        long current = next.get();
+        while (current <= value && !next.compareAndSet(current, value + 1)) {
+            current = next.get();
+        }
+        ensureLeased(next.get());
+    }
+
+    // Persist the exact mark on clean shutdown so the unused part of the lease is not skipped
+    public void flush() {
+        leaseLock.lock();
+        try {
+            // Hand back the rest of this thread's block if nobody has allocated past it
+            long[] current = block.get();
+            if (current[0] < current[1] && next.compareAndSet(current[1], current[0])) {
+                current[1] = current[0];
+            }
+            leasedUpTo = next.get();
+            marks.put(name, leasedUpTo);
+        } finally {
+            leaseLock.unlock();
+        }
+    }
+
+    private void ensureLeased(long end) {
+        if (end <= leasedUpTo) {
+            return;
+        }
+        leaseLock.lock();
+        try {
+            if (end > leasedUpTo) {
+                long ceiling = end + leaseSize;
+                marks.put(name, ceiling);
+                leasedUpTo = ceiling;
+            }
+        } finally {
+            leaseLock.unlock();
+        }
+    }
+
+    // Small file of NAME|mark lines shared by the allocators of one system
+    public static class MarkFile {
+        private final File file;
+        private final Map<String, Long> values = new LinkedHashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // Constructor - loads existing marks if the file exists
+        public MarkFile(String path) {
+            this.file = new File(path);
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split("\\|");
+                    if (parts.length == 2) {
+                        try {
+                            values.put(parts[0], Long.parseLong(parts[1]));
+                        } catch (NumberFormatException e) {
+                            // Skip malformed mark
+                        }
+                    }
+                }
+            } catch (FileNotFoundException e) {
+                // No marks yet - starting fresh
+            } catch (IOException e) {
+                System.err.println("Error loading ID marks: " + e.getMessage());
+            }
+        }
+
+        public boolean exists() {
+            return file.exists();
+        }
+
+        public long get(String name) {
+            lock.lock();
+            try {
+                Long value = values.get(name);
+                return value == null ? 0 : value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Update one mark and rewrite the file atomically
+        public void put(String name, long value) {
+            lock.lock();
+            try {
+                values.put(name, value);
+                write();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Rewrite the file from values - called with lock held
+        private void write() {
+            File temp = new File(file.getPath() + ".tmp");
+            try (PrintWriter writer = new PrintWriter(new FileWriter(temp))) {
+                for (Map.Entry<String, Long> entry : values.entrySet()) {
+                    writer.println(entry.getKey() + "|" + entry.getValue());
+                }
+            } catch (IOException e) {
+                System.err.println("Error saving ID marks: " + e.getMessage());
+                return;
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("Error saving ID marks: " + e.getMessage());
+            }
+        }
+    }
+}
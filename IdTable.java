@@ -0,0 +1,153 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Maps movies, showtimes and users to compact integer references.
+// A reference is the entity's slot in this table; slots are never reused,
+// so a removed entity leaves a null slot and stale references resolve to null.
+// Writers synchronize on the table; lookups never lock.
+public class IdTable {
+    private final Slots<Movie> movies = new Slots<>();
+    private final Slots<Showtime> showtimes = new Slots<>();
+    private final Slots<User> users = new Slots<>();
+    private volatile int[] showtimeMovie = new int[16];
+
+    private final Map<String, Integer> movieRefs = new ConcurrentHashMap<>();
+    private final Map<String, Integer> showtimeRefs = new ConcurrentHashMap<>();
+    private final Map<String, Integer> userRefs = new ConcurrentHashMap<>();
+
+    // Register a movie and assign its reference
+    public synchronized int add(Movie movie) {
+        movie.ref = movies.add(movie);
+        movieRefs.put(movie.movieId, movie.ref);
+        return movie.ref;
+    }
+
+    // Register a showtime belonging to the given movie
+    public synchronized int add(Showtime showtime, Movie movie) {
+        showtime.ref = showtimes.add(showtime);
+        int[] owners = showtimeMovie;
+        if (showtime.ref == owners.length) {
+            owners = Arrays.copyOf(owners, owners.length * 2);
+        }
+        owners[showtime.ref] = movie.ref;
+        showtimeMovie = owners;
+        showtimeRefs.put(showtime.showtimeId, showtime.ref);
+        return showtime.ref;
+    }
+
+    // Register a user and assign its reference
+    public synchronized int add(User user) {
+        user.ref = users.add(user);
+        userRefs.put(user.userId, user.ref);
+        return user.ref;
+    }
+
+    // Unregister a movie together with all of its showtimes. Returns the showtimes this call
+    // unregistered, null if the movie was no longer registered - so of concurrent removes,
+    // exactly one gets each entity.
+    public synchronized List<Showtime> remove(Movie movie) {
+        if (movies.get(movie.ref) != movie) {
+            return null;
+        }
+        List<Showtime> removed = new ArrayList<>();
+        for (Showtime showtime : movie.showtimes) {
+            if (remove(showtime)) {
+                removed.add(showtime);
+            }
+        }
+        movieRefs.remove(movie.movieId);
+        movies.set(movie.ref, null);
+        return removed;
+    }
+
+    // Unregister a showtime, false if it was no longer registered
+    public synchronized boolean remove(Showtime showtime) {
+        if (showtimes.get(showtime.ref) != showtime) {
+            return false;
+        }
+        showtimeRefs.remove(showtime.showtimeId);
+        showtimes.set(showtime.ref, null);
+        return true;
+    }
+
+    // Forget every entity, e.g. before loading a replacement snapshot
+    public synchronized void clear() {
+        movies.clear();
+        showtimes.clear();
+        users.clear();
+        showtimeMovie = new int[16];
+        movieRefs.clear();
+        showtimeRefs.clear();
+        userRefs.clear();
+    }
+
+    // Resolve references - null if the entity was removed
+    public Movie movie(int ref) {
+        return movies.get(ref);
+    }
+
+    public Showtime showtime(int ref) {
+        return showtimes.get(ref);
+    }
+
+    public User user(int ref) {
+        return users.get(ref);
+    }
+
+    // Reference of the movie that owns a showtime
+    public int movieOf(int showtimeRef) {
+        return showtimeMovie[showtimeRef];
+    }
+
+    // Lookups by external string ID - null if unknown
+    public Movie findMovie(String movieId) {
+        Integer ref = movieRefs.get(movieId);
+        return ref == null ? null : movies.get(ref);
+    }
+
+    public Showtime findShowtime(String showtimeId) {
+        Integer ref = showtimeRefs.get(showtimeId);
+        return ref == null ? null : showtimes.get(ref);
+    }
+
+    public User findUser(String userId) {
+        Integer ref = userRefs.get(userId);
+        return ref == null ? null : users.get(ref);
+    }
+
+    // Growable slot array. Every write republishes the array through the volatile
+    // field, so a reader holding a reference always sees the slot it refers to.
+    private static class Slots<T> {
+        private volatile Object[] items = new Object[16];
+        private int size = 0;
+
+        int add(T item) {
+            Object[] array = items;
+            if (size == array.length) {
+                array = Arrays.copyOf(array, array.length * 2);
+            }
+            array[size] = item;
+            items = array;
+            return size++;
+        }
+
+        void clear() {
+            items = new Object[16];
+            size = 0;
+        }
+
+        void set(int ref, T item) {
+            Object[] array = items;
+            array[ref] = item;
+            items = array;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int ref) {
+            return (T) items[ref];
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Workload Generator for Cinema Booking System
+ * Drives a BookingService with a configurable mix of customers and reports throughput and
+ * per-operation latency percentiles (p50/p99/p999), e.g. to replay a Friday-night rush
+ *
+ * Each worker is one customer session in a loop: it looks at a showtime's seat map or its
+ * own bookings (reads), books seats (writes), and cancels some bookings after holding them.
+ * Movies are picked with Zipf-skewed popularity, so a few blockbusters take most traffic.
+ *
+ * Usage: java LoadGenerator, with optional system properties
+ *   -Dload.threads=64             concurrent customers
+ *   -Dload.virtual=true           one virtual thread per customer instead of platform threads
+ *   -Dload.durationSeconds=30     measured run length, after load.warmupSeconds (default 5)
+ *   -Dload.movies=20              movies, each with load.showtimesPerMovie (5) showtimes
+ *   -Dload.seats=100              seats per showtime (at most 100)
+ *   -Dload.users=1000             registered customers
+ *   -Dload.zipf=1.1               popularity skew; 0 makes every movie equally popular
+ *   -Dload.readRatio=0.8          fraction of operations that only read
+ *   -Dload.seatsPerBooking=2      largest party size; each booking takes 1..N seats
+ *   -Dload.cancelRate=0.3         fraction of bookings cancelled after being held
+ *   -Dload.holdMillis=100         how long a booking is held before such a cancel
+ *   -Dload.thinkMillis=0          pause between a customer's operations
+ *   -Dload.restock=true           replace a sold-out showtime with a new one of the same
+ *                                 movie, so the run keeps booking; false to measure a sell-out
+ *   -Dload.autoSave=true          save to disk on every change, as the console does
+ *   -Dload.shards=0               drive a ShardedBookingEngine of N partitions instead of
+ *                                 one BookingService
+ */
+public class LoadGenerator {
+
+    private enum Operation { VIEW_SEATS, LIST_BOOKINGS, BOOK, CANCEL }
+
+    private final int threads = Integer.getInteger("load.threads", 64);
+    private final boolean virtual = Boolean.parseBoolean(System.getProperty("load.virtual", "true"));
+    private final int durationSeconds = Integer.getInteger("load.durationSeconds", 30);
+    private final int warmupSeconds = Integer.getInteger("load.warmupSeconds", 5);
+    private final int movieCount = Integer.getInteger("load.movies", 20);
+    private final int showtimesPerMovie = Integer.getInteger("load.showtimesPerMovie", 5);
+    private final int seats = Math.min(100, Integer.getInteger("load.seats", 100));
+    private final int userCount = Integer.getInteger("load.users", 1000);
+    private final double zipf = Double.parseDouble(System.getProperty("load.zipf", "1.1"));
+    private final double readRatio = Double.parseDouble(System.getProperty("load.readRatio", "0.8"));
+    private final int seatsPerBooking = Integer.getInteger("load.seatsPerBooking", 2);
+    private final double cancelRate = Double.parseDouble(System.getProperty("load.cancelRate", "0.3"));
+    private final long holdMillis = Long.getLong("load.holdMillis", 100);
+    private final long thinkMillis = Long.getLong("load.thinkMillis", 0);
+    private final boolean autoSave = Boolean.getBoolean("load.autoSave");
+    private final boolean restock = Boolean.parseBoolean(System.getProperty("load.restock", "true"));
+    private final int shards = Integer.getInteger("load.shards", 0);
+
+    private BookingService service;       // null when driving the sharded engine
+    private ShardedBookingEngine engine;  // null when driving one service
+    private final List<String> movieIds = new ArrayList<>();
+    private final List<List<Showtime>> showtimesByMovie = new ArrayList<>();
+    private final List<User> users = new ArrayList<>();
+    private double[] popularity; // cumulative Zipf weights per movie
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final LongAdder booked = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder soldOut = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        // Registration is not measured - cheap hashes keep the setup fast
+        if (System.getProperty("cinema.passwordIterations") == null) {
+            System.setProperty("cinema.passwordIterations", "1000");
+        }
+        new LoadGenerator().run();
+    }
+
+    private void run() throws Exception {
+        System.out.println("================================================================");
+        System.out.println("    CINEMA BOOKING SYSTEM - LOAD GENERATOR");
+        System.out.println("================================================================");
+        System.out.println(threads + (virtual ? " virtual" : " platform") + " threads, " + movieCount
+                           + " movies x " + showtimesPerMovie + " showtimes x " + seats + " seats, zipf "
+                           + zipf + ", read ratio " + readRatio + ", cancel rate " + cancelRate
+                           + (shards > 0 ? ", " + shards + " shards" : ""));
+
+        File dir = Files.createTempDirectory("cinema-load").toFile();
+        try {
+            setUp(dir);
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+            }
+
+            ExecutorService executor = virtual ? Executors.newVirtualThreadPerTaskExecutor()
+                                               : Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                executor.execute(this::customer);
+            }
+            Thread.sleep(warmupSeconds * 1000L);
+            resetCounters();
+            measuring = true;
+            long start = System.nanoTime();
+            Thread.sleep(durationSeconds * 1000L);
+            measuring = false;
+            long elapsed = System.nanoTime() - start;
+            running = false;
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            if (engine != null) {
+                engine.shutdown();
+            }
+            report(elapsed);
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    // Shards keep their data in subdirectories
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+
+    // ==================== Setup ====================
+
+    private void setUp(File dir) {
+        if (shards > 0) {
+            engine = new ShardedBookingEngine(dir.getPath(), shards);
+            engine.load();
+        } else {
+            service = new BookingService(new CinemaStorage(dir.getPath()));
+            service.load();
+        }
+        setAutoSave(false);
+        for (int m = 0; m < movieCount; m++) {
+            Movie movie = engine != null ? engine.addMovie("Load Movie " + (m + 1), 120)
+                                         : service.addMovie("Load Movie " + (m + 1), 120);
+            List<Showtime> showtimes = new CopyOnWriteArrayList<>();
+            for (int s = 0; s < showtimesPerMovie; s++) {
+                showtimes.add(addShowtime(movie.movieId, LocalDateTime.now().plusDays(1 + s)));
+            }
+            movieIds.add(movie.movieId);
+            showtimesByMovie.add(showtimes);
+        }
+        for (int u = 0; u < userCount; u++) {
+            users.add(engine != null ? engine.registerUser("load" + u, "pw", "CUSTOMER")
+                                     : service.registerUser("load" + u, "pw", "CUSTOMER"));
+        }
+        setAutoSave(autoSave);
+
+        // Movie of rank r has weight 1 / r^zipf
+        popularity = new double[movieCount];
+        double total = 0;
+        for (int m = 0; m < movieCount; m++) {
+            total += 1 / Math.pow(m + 1, zipf);
+            popularity[m] = total;
+        }
+    }
+
+    // ==================== Customers ====================
+
+    // One customer's loop until the run ends; cancels are due holdMillis after booking
+    private void customer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ArrayDeque<Hold> held = new ArrayDeque<>();
+        User user = users.get(random.nextInt(users.size()));
+        while (running) {
+            Hold due = held.peek();
+            if (due != null && due.dueNanos <= System.nanoTime()) {
+                held.poll();
+                timed(Operation.CANCEL, () -> {
+                    if (cancel(due.bookingId).success) {
+                        count(cancelled);
+                    }
+                });
+            } else if (random.nextDouble() < readRatio) {
+                if (random.nextInt(4) == 0) {
+                    timed(Operation.LIST_BOOKINGS, () -> listBookings(user, random));
+                } else {
+                    Showtime showtime = pickShowtime(random);
+                    timed(Operation.VIEW_SEATS, () -> availability(showtime.showtimeId));
+                }
+            } else {
+                Showtime showtime = pickShowtime(random);
+                int party = 1 + random.nextInt(seatsPerBooking);
+                Booking[] result = new Booking[1];
+                timed(Operation.BOOK, () -> result[0] = book(showtime, party, user, random));
+                if (result[0] != null && random.nextDouble() < cancelRate) {
+                    held.add(new Hold(result[0].bookingId(), System.nanoTime() + holdMillis * 1_000_000));
+                } else if (result[0] == null && restock && availability(showtime.showtimeId).freeSeats.isEmpty()) {
+                    replaceSoldOut(showtime);
+                }
+            }
+            if (thinkMillis > 0) {
+                try {
+                    Thread.sleep(thinkMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Pick seats from the seat map as a customer would, then try to book them
+    private Booking book(Showtime showtime, int party, User user, ThreadLocalRandom random) {
+        List<String> free = availability(showtime.showtimeId).freeSeats;
+        if (free.size() < party) {
+            count(soldOut);
+            return null;
+        }
+        int first = random.nextInt(free.size() - party + 1);
+        List<String> seatNumbers = free.subList(first, first + party);
+        BookingResult result = engine != null ? engine.book(showtime.showtimeId, seatNumbers, user.userId)
+                                              : service.book(showtime.showtimeId, seatNumbers, user.userId);
+        if (!result.success) {
+            count(conflicts); // someone else took a seat since the seat map was read
+            return null;
+        }
+        count(booked);
+        return result.booking;
+    }
+
+    // Swap a sold-out showtime for a fresh one of the same movie - not timed
+    private void replaceSoldOut(Showtime showtime) {
+        for (int m = 0; m < movieCount; m++) {
+            List<Showtime> showtimes = showtimesByMovie.get(m);
+            synchronized (showtimes) {
+                int index = showtimes.indexOf(showtime);
+                if (index >= 0) {
+                    showtimes.set(index, addShowtime(movieIds.get(m), LocalDateTime.now().plusDays(1)));
+                    return;
+                }
+            }
+        }
+    }
+
+    // ==================== Target ====================
+    // Calls go to the one service, or to the sharded engine with load.shards
+
+    private void setAutoSave(boolean autoSave) {
+        if (engine != null) {
+            engine.setAutoSave(autoSave);
+        } else {
+            service.setAutoSave(autoSave);
+        }
+    }
+
+    private Showtime addShowtime(String movieId, LocalDateTime dateTime) {
+        return engine != null ? engine.addShowtime(movieId, dateTime, seats, "A")
+                              : service.addShowtime(movieId, dateTime, seats, "A");
+    }
+
+    private Availability availability(String showtimeId) {
+        return engine != null ? engine.availability(showtimeId) : service.availability(showtimeId);
+    }
+
+    private BookingResult cancel(String bookingId) {
+        return engine != null ? engine.cancel(bookingId) : service.cancel(bookingId);
+    }
+
+    // Page through the user's bookings for one to four pages, as a client scrolling would,
+    // so resuming from page tokens is measured too. The engine has no paged listing; it
+    // merges every partition's bookings of the user.
+    private void listBookings(User user, ThreadLocalRandom random) {
+        if (engine != null) {
+            engine.bookingsForUser(user.userId);
+            return;
+        }
+        String pageToken = null;
+        for (int pages = 1 + random.nextInt(4); pages > 0; pages--) {
+            pageToken = service.listBookingsForUser(user.userId, pageToken, 5).nextPageToken;
+            if (pageToken == null) {
+                break;
+            }
+        }
+    }
+
+    private Showtime pickShowtime(ThreadLocalRandom random) {
+        double x = random.nextDouble() * popularity[movieCount - 1];
+        int movie = 0;
+        int high = movieCount - 1;
+        while (movie < high) {
+            int middle = (movie + high) >>> 1;
+            if (popularity[middle] < x) {
+                movie = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<Showtime> showtimes = showtimesByMovie.get(movie);
+        return showtimes.get(random.nextInt(showtimes.size()));
+    }
+
+    private void timed(Operation operation, Runnable action) {
+        long start = System.nanoTime();
+        action.run();
+        if (measuring) {
+            latencies.get(operation).record(System.nanoTime() - start);
+        }
+    }
+
+    private void count(LongAdder counter) {
+        if (measuring) {
+            counter.increment();
+        }
+    }
+
+    private void resetCounters() {
+        for (LatencyHistogram histogram : latencies.values()) {
+            histogram.reset();
+        }
+        booked.reset();
+        conflicts.reset();
+        soldOut.reset();
+        cancelled.reset();
+    }
+
+    // A booking to cancel once it has been held long enough
+    private static class Hold {
+        final String bookingId;
+        final long dueNanos;
+
+        // Constructor
+        Hold(String bookingId, long dueNanos) {
+            this.bookingId = bookingId;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    // ==================== Report ====================
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        LatencyHistogram all = new LatencyHistogram();
+        System.out.println("\n[RESULTS] " + durationSeconds + " s measured after " + warmupSeconds + " s warmup");
+        System.out.println("--------------------------------------------------------------------------------");
+        System.out.printf("%-14s %10s %10s %10s %10s %10s %10s%n",
+                          "Operation", "count", "ops/s", "p50 us", "p99 us", "p999 us", "max us");
+        for (Map.Entry<Operation, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            all.add(histogram);
+            printRow(entry.getKey().name(), histogram, seconds);
+        }
+        printRow("ALL", all, seconds);
+        System.out.println("--------------------------------------------------------------------------------");
+        System.out.println("Bookings made: " + booked.sum() + ", seat conflicts: " + conflicts.sum()
+                           + ", sold out: " + soldOut.sum() + ", cancelled: " + cancelled.sum());
+    }
+
+    private static void printRow(String name, LatencyHistogram histogram, double seconds) {
+        System.out.printf("%-14s %10d %10.0f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.count(),
+                          histogram.count() / seconds, histogram.percentile(0.50) / 1e3,
+                          histogram.percentile(0.99) / 1e3, histogram.percentile(0.999) / 1e3,
+                          histogram.max() / 1e3);
+    }
+}
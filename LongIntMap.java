@@ -0,0 +1,215 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Open-addressing hash map from long keys to int values without boxing.
+// Linear probing with backward-shift deletion, so no tombstones build up.
+// Slots are kept in two heap arrays, or in a direct buffer for stores that keep their
+// data off the heap (see offHeap).
+public class LongIntMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final boolean direct;
+    private Storage slots;
+    private int size;
+
+    // Constructor
+    public LongIntMap(int expectedSize) {
+        this(expectedSize, false);
+    }
+
+    private LongIntMap(int expectedSize, boolean direct) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        this.direct = direct;
+        this.slots = storage(capacity);
+    }
+
+    // Map whose slots live in a direct buffer rather than on the heap
+    public static LongIntMap offHeap(int expectedSize) {
+        return new LongIntMap(expectedSize, true);
+    }
+
+    // Value for the key, or -1 if absent
+    public int get(long key) {
+        int mask = slots.capacity() - 1;
+        for (int slot = hash(key) & mask; slots.key(slot) != EMPTY; slot = (slot + 1) & mask) {
+            if (slots.key(slot) == key) {
+                return slots.value(slot);
+            }
+        }
+        return -1;
+    }
+
+    public void put(long key, int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Reserved key: " + key);
+        }
+        if ((size + 1) * 2 > slots.capacity()) {
+            resize(slots.capacity() * 2);
+        }
+        int mask = slots.capacity() - 1;
+        int slot = hash(key) & mask;
+        while (slots.key(slot) != EMPTY) {
+            if (slots.key(slot) == key) {
+                slots.set(slot, key, value);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots.set(slot, key, value);
+        size++;
+    }
+
+    public void remove(long key) {
+        int mask = slots.capacity() - 1;
+        int slot = hash(key) & mask;
+        while (slots.key(slot) != key) {
+            if (slots.key(slot) == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Shift following entries of the probe run back into the hole
+        int hole = slot;
+        for (int next = (hole + 1) & mask; slots.key(next) != EMPTY; next = (next + 1) & mask) {
+            int home = hash(slots.key(next)) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots.set(hole, slots.key(next), slots.value(next));
+                hole = next;
+            }
+        }
+        slots.set(hole, EMPTY, 0);
+        size--;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        slots.clear();
+        size = 0;
+    }
+
+    // Memory taken by the slots, in bytes
+    public long slotBytes() {
+        return (long) slots.capacity() * (direct ? DirectStorage.SLOT_BYTES : Long.BYTES + Integer.BYTES);
+    }
+
+    private void resize(int capacity) {
+        Storage old = slots;
+        slots = storage(capacity);
+        size = 0;
+        for (int slot = 0; slot < old.capacity(); slot++) {
+            if (old.key(slot) != EMPTY) {
+                put(old.key(slot), old.value(slot));
+            }
+        }
+    }
+
+    private Storage storage(int capacity) {
+        return direct ? new DirectStorage(capacity) : new HeapStorage(capacity);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // Key and value slots, all EMPTY when new or cleared
+    private interface Storage {
+        int capacity();
+
+        long key(int slot);
+
+        int value(int slot);
+
+        void set(int slot, long key, int value);
+
+        void clear();
+    }
+
+    private static class HeapStorage implements Storage {
+        private final long[] keys;
+        private final int[] values;
+
+        // Constructor
+        HeapStorage(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        @Override
+        public int capacity() {
+            return keys.length;
+        }
+
+        @Override
+        public long key(int slot) {
+            return keys[slot];
+        }
+
+        @Override
+        public int value(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        public void set(int slot, long key, int value) {
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+
+    // Slot layout: key:long | value:int | padding:int
+    private static class DirectStorage implements Storage {
+        static final int SLOT_BYTES = 16;
+
+        private final ByteBuffer buffer;
+        private final int capacity;
+
+        // Constructor
+        DirectStorage(int capacity) {
+            this.buffer = ByteBuffer.allocateDirect(capacity * SLOT_BYTES).order(ByteOrder.nativeOrder());
+            this.capacity = capacity;
+            clear();
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public long key(int slot) {
+            return buffer.getLong(slot * SLOT_BYTES);
+        }
+
+        @Override
+        public int value(int slot) {
+            return buffer.getInt(slot * SLOT_BYTES + 8);
+        }
+
+        @Override
+        public void set(int slot, long key, int value) {
+            buffer.putLong(slot * SLOT_BYTES, key);
+            buffer.putInt(slot * SLOT_BYTES + 8, value);
+        }
+
+        @Override
+        public void clear() {
+            for (int slot = 0; slot < capacity; slot++) {
+                buffer.putLong(slot * SLOT_BYTES, EMPTY);
+            }
+        }
+    }
+}
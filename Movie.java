@@ -1,20 +1,21 @@
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Movie implements Serializable {
     private static final long serialVersionUID = 1L;
     public String movieId;
     public String title;
     public int duration; // in minutes
-    public List<Showtime> showtimes;
+    public List<Showtime> showtimes; // copy-on-write, safe to iterate while showtimes change
+    public int ref = -1; // slot in the IdTable
 
     // Constructor
     public Movie(String movieId, String title, int duration) {
         this.movieId = movieId;
         this.title = title;
         this.duration = duration;
-        this.showtimes = new ArrayList<>();
+        this.showtimes = new CopyOnWriteArrayList<>();
     }
     
     @Override
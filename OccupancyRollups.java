@@ -0,0 +1,203 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bookings, cancellations and booked seats over time, kept in fixed time buckets as they
+// happen so dashboards never go back to the raw bookings.
+//
+// Each series is a ring of buckets per resolution - minute, hour and day - and every
+// change is added to all of them, so the coarser rings are the downsampled history and
+// reach further back: a day of minutes, a month of hours, a year of days. A bucket is one
+// long holding its period and count, updated with a single CAS; a bucket whose period has
+// passed is reused by the next change that lands in its slot. Range queries read one
+// bucket per step, so they cost microseconds however many bookings there were.
+//
+// Each showtime also keeps the net seats booked per hour and per day, which with its
+// current count gives the fill curve leading up to the show. Times are local, as in the
+// booking store. After a restart, cancellations are rebuilt at their booking's time, as
+// the store does not keep when a booking was cancelled.
+public class OccupancyRollups {
+    public enum Resolution {
+        MINUTE(60),
+        HOUR(60 * 60),
+        DAY(24 * 60 * 60);
+
+        final long seconds;
+
+        Resolution(long seconds) {
+            this.seconds = seconds;
+        }
+    }
+
+    // Buckets kept per resolution, in Resolution order
+    private static final int[] TOTAL_BUCKETS = {24 * 60, 31 * 24, 400};
+    private static final int[] SHOWTIME_BUCKETS = {0, 14 * 24, 120};
+
+    private final Series bookings = new Series(TOTAL_BUCKETS);
+    private final Series cancellations = new Series(TOTAL_BUCKETS);
+    private final Series seats = new Series(TOTAL_BUCKETS); // net of cancellations
+    private final Map<Integer, Series> seatsByShowtime = new ConcurrentHashMap<>();
+    private static final Series NO_CHANGES = new Series(SHOWTIME_BUCKETS); // never written
+
+    // Bookings made per bucket, from the bucket holding from to the one holding to
+    public long[] bookings(LocalDateTime from, LocalDateTime to, Resolution resolution) {
+        return bookings.range(epochSecond(from), epochSecond(to), resolution);
+    }
+
+    public long[] cancellations(LocalDateTime from, LocalDateTime to, Resolution resolution) {
+        return cancellations.range(epochSecond(from), epochSecond(to), resolution);
+    }
+
+    // Seats booked less seats released per bucket
+    public long[] seatsBooked(LocalDateTime from, LocalDateTime to, Resolution resolution) {
+        return seats.range(epochSecond(from), epochSecond(to), resolution);
+    }
+
+    // Seats booked in a showtime at the end of each bucket from from up to now, worked
+    // back from its current count. Showtimes keep hour and day buckets only.
+    public long[] fillCurve(int showtimeRef, long bookedNow, LocalDateTime from, Resolution resolution) {
+        Series series = seatsByShowtime.getOrDefault(showtimeRef, NO_CHANGES);
+        long[] changes = series.range(epochSecond(from), epochSecond(LocalDateTime.now()), resolution);
+        long[] curve = new long[changes.length];
+        long booked = bookedNow;
+        for (int i = changes.length - 1; i >= 0; i--) {
+            curve[i] = booked;
+            booked -= changes[i];
+        }
+        return curve;
+    }
+
+    // ==================== Updates ====================
+
+    // bookedAt and cancelledAt are local epoch seconds, as BookingStore.bookedAt
+    void booked(int showtimeRef, int seatCount, long bookedAt) {
+        bookings.add(bookedAt, 1);
+        seats.add(bookedAt, seatCount);
+        showtimeSeats(showtimeRef).add(bookedAt, seatCount);
+    }
+
+    void cancelled(int showtimeRef, int seatCount, long cancelledAt) {
+        cancellations.add(cancelledAt, 1);
+        seats.add(cancelledAt, -seatCount);
+        showtimeSeats(showtimeRef).add(cancelledAt, -seatCount);
+    }
+
+    // Add every booking of a freshly loaded store at its booking time. The store keeps no
+    // cancellation time, so a cancelled booking is also counted as cancelled at its booking
+    // time: the booking and cancellation totals survive a restart, but the seats it held
+    // before the cancel drop out of the seat series and fill curve.
+    void bookingsLoaded(BookingStore store) {
+        int rows = store.size();
+        for (int row = 0; row < rows; row++) {
+            int showtimeRef = store.showtimeRef(row);
+            int seatCount = store.seatCount(row);
+            long bookedAt = store.bookedAt(row);
+            booked(showtimeRef, seatCount, bookedAt);
+            if (!store.isLive(row)) {
+                cancelled(showtimeRef, seatCount, bookedAt);
+            }
+        }
+    }
+
+    void showtimeRemoved(int showtimeRef) {
+        seatsByShowtime.remove(showtimeRef);
+    }
+
+    void clear() {
+        bookings.clear();
+        cancellations.clear();
+        seats.clear();
+        seatsByShowtime.clear();
+    }
+
+    static long epochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private Series showtimeSeats(int showtimeRef) {
+        return seatsByShowtime.computeIfAbsent(showtimeRef, ref -> new Series(SHOWTIME_BUCKETS));
+    }
+
+    // One count over time at every resolution with buckets
+    private static class Series {
+        private final AtomicLongArray[] rings = new AtomicLongArray[Resolution.values().length];
+
+        // Constructor - bucketCounts per resolution, 0 to not keep one
+        Series(int[] bucketCounts) {
+            for (int r = 0; r < rings.length; r++) {
+                if (bucketCounts[r] > 0) {
+                    rings[r] = new AtomicLongArray(bucketCounts[r]);
+                }
+            }
+        }
+
+        void add(long epochSecond, int delta) {
+            Resolution[] resolutions = Resolution.values();
+            for (int r = 0; r < rings.length; r++) {
+                if (rings[r] != null) {
+                    add(rings[r], Math.floorDiv(epochSecond, resolutions[r].seconds), delta);
+                }
+            }
+        }
+
+        // Each bucket is (period + 1) << 32 | count, 0 when the slot was never used
+        private static void add(AtomicLongArray ring, long period, int delta) {
+            int slot = (int) Math.floorMod(period, (long) ring.length());
+            while (true) {
+                long bucket = ring.get(slot);
+                long bucketPeriod = (bucket >>> 32) - 1;
+                long updated;
+                if (bucket != 0 && bucketPeriod == period) {
+                    updated = (bucket & 0xFFFFFFFF00000000L) | ((int) bucket + delta & 0xFFFFFFFFL);
+                } else if (bucket == 0 || bucketPeriod < period) {
+                    updated = (period + 1) << 32 | (delta & 0xFFFFFFFFL);
+                } else {
+                    return; // older than the ring reaches
+                }
+                if (ring.compareAndSet(slot, bucket, updated)) {
+                    return;
+                }
+            }
+        }
+
+        long[] range(long fromSecond, long toSecond, Resolution resolution) {
+            AtomicLongArray ring = rings[resolution.ordinal()];
+            if (ring == null) {
+                throw new IllegalArgumentException(resolution + " buckets are not kept for this series");
+            }
+            long first = Math.floorDiv(fromSecond, resolution.seconds);
+            long last = Math.floorDiv(toSecond, resolution.seconds);
+            long current = Math.floorDiv(epochSecond(LocalDateTime.now()), resolution.seconds);
+            if (last < first) {
+                throw new IllegalArgumentException("Range ends before it starts");
+            }
+            if (first <= current - ring.length()) {
+                throw new IllegalArgumentException(resolution + " buckets only reach back "
+                                                   + ring.length() + " periods");
+            }
+            if (last - first >= ring.length()) {
+                throw new IllegalArgumentException("At most " + ring.length() + " " + resolution
+                                                   + " buckets per query");
+            }
+            long[] counts = new long[(int) (last - first + 1)];
+            for (int i = 0; i < counts.length; i++) {
+                long period = first + i;
+                long bucket = ring.get((int) Math.floorMod(period, (long) ring.length()));
+                counts[i] = bucket != 0 && (bucket >>> 32) - 1 == period ? (int) bucket : 0;
+            }
+            return counts;
+        }
+
+        void clear() {
+            for (AtomicLongArray ring : rings) {
+                if (ring != null) {
+                    for (int i = 0; i < ring.length(); i++) {
+                        ring.set(i, 0);
+                    }
+                }
+            }
+        }
+    }
+}
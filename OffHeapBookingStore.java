@@ -0,0 +1,211 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Booking store that keeps records, seat payloads and the ID index in direct buffers.
+// The heap only holds one small ByteBuffer object per chunk, so heap size and GC work
+// stay flat however much booking history is loaded.
+//
+// Record layout (56 bytes): id:long | movieRef:int | showtimeRef:int | userRef:int |
+// seatCount:int | bookedAt:long | seatOffset:long | live:int | nextOfUser:int |
+// nextOfShowtime:int | padding:int
+public class OffHeapBookingStore extends BookingStore {
+    private static final int RECORD_BYTES = 56;
+    private static final int ID = 0;
+    private static final int MOVIE = 8;
+    private static final int SHOWTIME = 12;
+    private static final int USER = 16;
+    private static final int SEAT_COUNT = 20;
+    private static final int BOOKED_AT = 24;
+    private static final int SEAT_OFFSET = 32;
+    private static final int LIVE = 40;
+    private static final int NEXT_OF_USER = 44;
+    private static final int NEXT_OF_SHOWTIME = 48;
+
+    private static final int RECORDS_PER_CHUNK = 1 << 14;
+    private static final int SEATS_PER_CHUNK = 1 << 18;
+
+    private final List<ByteBuffer> recordChunks = new ArrayList<>();
+    private final List<ByteBuffer> seatChunks = new ArrayList<>();
+    private long seatsUsed = 0; // next free seat position across all seat chunks
+
+    private final LongIntMap rowById = LongIntMap.offHeap(1 << 11);
+
+    private volatile int size = 0;
+    private int liveCount = 0;
+    private long maxId = 0;
+
+    @Override
+    public synchronized Booking append(long id, int movieRef, int showtimeRef, int userRef,
+                                       int[] seats, LocalDateTime bookingTime) {
+        if (seats.length > SEATS_PER_CHUNK) {
+            throw new IllegalArgumentException("Too many seats in one booking: " + seats.length);
+        }
+        if (rowById.get(id) >= 0) {
+            throw new IllegalStateException("Duplicate booking ID: " + Booking.formatId(id));
+        }
+        int row = size;
+        if (row / RECORDS_PER_CHUNK == recordChunks.size()) {
+            recordChunks.add(allocate((long) RECORDS_PER_CHUNK * RECORD_BYTES));
+        }
+
+        // A booking's seats never straddle two seat chunks
+        int inChunk = (int) (seatsUsed % SEATS_PER_CHUNK);
+        if (inChunk + seats.length > SEATS_PER_CHUNK) {
+            seatsUsed += SEATS_PER_CHUNK - inChunk;
+        }
+        if (seatsUsed / SEATS_PER_CHUNK == seatChunks.size()) {
+            seatChunks.add(allocate((long) SEATS_PER_CHUNK * Integer.BYTES));
+        }
+        ByteBuffer seatChunk = seatChunks.get((int) (seatsUsed / SEATS_PER_CHUNK));
+        int seatBase = (int) (seatsUsed % SEATS_PER_CHUNK) * Integer.BYTES;
+        for (int i = 0; i < seats.length; i++) {
+            seatChunk.putInt(seatBase + i * Integer.BYTES, seats[i]);
+        }
+
+        ByteBuffer chunk = recordChunks.get(row / RECORDS_PER_CHUNK);
+        int base = (row % RECORDS_PER_CHUNK) * RECORD_BYTES;
+        chunk.putLong(base + ID, id);
+        chunk.putInt(base + MOVIE, movieRef);
+        chunk.putInt(base + SHOWTIME, showtimeRef);
+        chunk.putInt(base + USER, userRef);
+        chunk.putInt(base + SEAT_COUNT, seats.length);
+        chunk.putLong(base + BOOKED_AT, bookingTime.toEpochSecond(ZoneOffset.UTC));
+        chunk.putLong(base + SEAT_OFFSET, seatsUsed);
+        chunk.putInt(base + LIVE, 1);
+        seatsUsed += seats.length;
+        link(row, userRef, showtimeRef);
+
+        rowById.put(id, row);
+        liveCount++;
+        maxId = Math.max(maxId, id);
+        size = row + 1;
+        return new Booking(this, row);
+    }
+
+    @Override
+    public synchronized void remove(int row) {
+        ByteBuffer chunk = recordChunks.get(row / RECORDS_PER_CHUNK);
+        int base = (row % RECORDS_PER_CHUNK) * RECORD_BYTES;
+        if (chunk.getInt(base + LIVE) != 0) {
+            chunk.putInt(base + LIVE, 0);
+            liveCount--;
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        recordChunks.clear();
+        seatChunks.clear();
+        seatsUsed = 0;
+        size = 0;
+        liveCount = 0;
+        maxId = 0;
+        rowById.clear();
+        unlinkAll();
+    }
+
+    @Override
+    public synchronized int rowOf(long id) {
+        return rowById.get(id);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int liveCount() {
+        return liveCount;
+    }
+
+    @Override
+    public long maxId() {
+        return maxId;
+    }
+
+    @Override
+    public boolean isLive(int row) {
+        return chunk(row).getInt(offset(row) + LIVE) != 0;
+    }
+
+    @Override
+    public long id(int row) {
+        return chunk(row).getLong(offset(row) + ID);
+    }
+
+    @Override
+    public int movieRef(int row) {
+        return chunk(row).getInt(offset(row) + MOVIE);
+    }
+
+    @Override
+    public int showtimeRef(int row) {
+        return chunk(row).getInt(offset(row) + SHOWTIME);
+    }
+
+    @Override
+    public int userRef(int row) {
+        return chunk(row).getInt(offset(row) + USER);
+    }
+
+    @Override
+    public long bookedAt(int row) {
+        return chunk(row).getLong(offset(row) + BOOKED_AT);
+    }
+
+    @Override
+    public int seatCount(int row) {
+        return chunk(row).getInt(offset(row) + SEAT_COUNT);
+    }
+
+    @Override
+    public int seatAt(int row, int i) {
+        long position = chunk(row).getLong(offset(row) + SEAT_OFFSET) + i;
+        ByteBuffer seatChunk = seatChunks.get((int) (position / SEATS_PER_CHUNK));
+        return seatChunk.getInt((int) (position % SEATS_PER_CHUNK) * Integer.BYTES);
+    }
+
+    @Override
+    public int nextOfUser(int row) {
+        return chunk(row).getInt(offset(row) + NEXT_OF_USER);
+    }
+
+    @Override
+    public int nextOfShowtime(int row) {
+        return chunk(row).getInt(offset(row) + NEXT_OF_SHOWTIME);
+    }
+
+    @Override
+    protected void setNextOfUser(int row, int next) {
+        chunk(row).putInt(offset(row) + NEXT_OF_USER, next);
+    }
+
+    @Override
+    protected void setNextOfShowtime(int row, int next) {
+        chunk(row).putInt(offset(row) + NEXT_OF_SHOWTIME, next);
+    }
+
+    // Off-heap memory currently reserved by this store, in bytes
+    public synchronized long offHeapBytes() {
+        return (long) recordChunks.size() * RECORDS_PER_CHUNK * RECORD_BYTES
+            + (long) seatChunks.size() * SEATS_PER_CHUNK * Integer.BYTES
+            + rowById.slotBytes();
+    }
+
+    private ByteBuffer chunk(int row) {
+        return recordChunks.get(row / RECORDS_PER_CHUNK);
+    }
+
+    private static int offset(int row) {
+        return (row % RECORDS_PER_CHUNK) * RECORD_BYTES;
+    }
+
+    private static ByteBuffer allocate(long bytes) {
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,68 @@
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Salted PBKDF2 password hashes, stored as "pbkdf2$<iterations>$<salt>$<hash>" with the
+// salt and hash in base64. The iteration count travels with each hash, so it can be raised
+// later without invalidating stored ones. A hash takes tens of milliseconds on purpose;
+// callers pay it at registration and login only and use a SessionCache after that.
+public class PasswordHasher {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom random = new SecureRandom();
+    private static final int iterations = Integer.getInteger("cinema.passwordIterations", 210_000);
+    // Compared against when the user does not exist, so a miss takes as long as a wrong password
+    private static final String decoy = hash("decoy");
+
+    // A new salted hash of the password
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+               + base64.encodeToString(derive(password, salt, iterations));
+    }
+
+    // Whether the password matches a stored hash, in time independent of where they differ
+    public static boolean verify(String password, String stored) {
+        String[] parts = stored == null ? new String[0] : stored.split("\\$");
+        if (parts.length != 4 || !stored.startsWith(PREFIX)) {
+            return false;
+        }
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] expected = base64.decode(parts[3]);
+            byte[] actual = derive(password, base64.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false; // damaged hash
+        }
+    }
+
+    // Spend the time of a verify without a user, see decoy
+    public static void verifyDecoy(String password) {
+        verify(password, decoy);
+    }
+
+    // Whether a stored value is a hash rather than a password saved in the clear
+    public static boolean isHash(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
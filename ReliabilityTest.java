@@ -1,5 +1,4 @@
 import java.io.*;
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
@@ -22,6 +21,11 @@ public class ReliabilityTest {
     private static long testStartTime;
     
     public static void main(String[] args) {
+        // Test users are registered by the hundred - cheap hashes keep the suite fast
+        if (System.getProperty("cinema.passwordIterations") == null) {
+            System.setProperty("cinema.passwordIterations", "1000");
+        }
+
         System.out.println("================================================================");
         System.out.println("    CINEMA BOOKING SYSTEM - RELIABILITY TEST SUITE");
         System.out.println("================================================================\n");
@@ -364,15 +368,9 @@ public class ReliabilityTest {
             // Check 2: Booking references valid
             boolean orphanedBookings = false;
             for (Booking booking : system.getBookings()) {
-                boolean found = false;
-                for (Movie movie : system.getMovies()) {
-                    if (movie.title.equals(booking.movieTitle)) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found) {
-                    System.out.println("  [FAIL] Orphaned booking: " + booking.bookingId);
+                Movie bookedMovie = system.getIdTable().movie(booking.movieRef());
+                if (bookedMovie == null || !system.getMovies().contains(bookedMovie)) {
+                    System.out.println("  [FAIL] Orphaned booking: " + booking.bookingId());
                     orphanedBookings = true;
                 }
             }
@@ -394,28 +392,22 @@ public class ReliabilityTest {
     private static boolean simulateBooking(CinemaBookingSystem system, User user, 
                                           Movie movie, Showtime showtime, String seatNumber) {
         try {
-            // Check if seat is available
-            if (!showtime.isSeatAvailable(seatNumber)) {
-                return false;
-            }
-            
-            // Reserve the seat
-            showtime.reserveSeat(seatNumber);
+            // Keep test bookings in memory - saving would use up the real seats
+            BookingService service = system.getService();
+            service.setAutoSave(false);
             
-            // Create booking
-            List<String> seats = new ArrayList<>();
-            seats.add(seatNumber);
-            Booking booking = new Booking(
-                "B" + System.currentTimeMillis(),
-                user.name,
-                movie.title,
-                showtime.showtimeId,
-                seats,
-                LocalDateTime.now()
-            );
+            // Test users are not registered yet, so register them on first use
+            User registered = service.findUserByName(user.name);
+            if (registered == null) {
+                registered = service.registerUser(user.name, user.password, user.role);
+            }
+            if (registered == null) {
+                registered = service.findUserByName(user.name);
+            }
             
-            system.getBookings().add(booking);
-            return true;
+            // Book through the service - it checks and reserves the seat atomically
+            BookingResult result = service.book(showtime.showtimeId, List.of(seatNumber), registered.userId);
+            return result.success;
             
         } catch (Exception e) {
             return false;
@@ -428,13 +420,14 @@ public class ReliabilityTest {
         // Check each showtime for seats booked by multiple bookings
         for (Movie movie : system.getMovies()) {
             for (Showtime showtime : movie.showtimes) {
-                for (Seat seat : showtime.seats) {
+                for (int seatIndex = 0; seatIndex < showtime.seats.size(); seatIndex++) {
+                    Seat seat = showtime.seats.get(seatIndex);
                     if (seat.isBooked) {
                         // Count how many bookings claim this seat
                         int bookingCount = 0;
                         for (Booking booking : system.getBookings()) {
-                            if (booking.showtimeId.equals(showtime.showtimeId) && 
-                                booking.seatNumbers.contains(seat.seatNumber)) {
+                            if (booking.showtimeRef() == showtime.ref && 
+                                booking.holdsSeat(seatIndex)) {
                                 bookingCount++;
                             }
                         }
@@ -0,0 +1,161 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+// Follower side of log-shipping replication. Keeps a read-only replica of the leader's
+// BookingService: it starts from a snapshot, then applies the leader's change records in
+// log order and resumes from its own offset after a disconnect. See ReplicationLeader
+// for the protocol.
+public class ReplicationFollower {
+    private static final long RETRY_MILLIS = 1000;
+
+    private final BookingService replica;
+    private final int leaderPort;
+    private volatile boolean running = true;
+    private volatile Socket socket;
+
+    // Replication position
+    private volatile long nextOffset = -1;    // next record to apply, -1 before the first snapshot
+    private volatile long leaderOffset = -1;  // leader's end offset at the last heartbeat
+    private volatile long lastAppliedMillis;  // leader time of the last applied record
+
+    // Constructor - the replica keeps its files in its own directory
+    public ReplicationFollower(String directory, int leaderPort) {
+        this.replica = new BookingService(new CinemaStorage(directory));
+        this.replica.setAutoSave(false);
+        this.leaderPort = leaderPort;
+    }
+
+    public void start() {
+        Thread follower = new Thread(this::follow, "replication-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    // Stop following and write the replica's state to its directory
+    public void stop() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+        if (nextOffset >= 0) {
+            replica.save();
+        }
+    }
+
+    // Read-only view of the replicated data
+    public BookingService getReplica() {
+        return replica;
+    }
+
+    public long getAppliedOffset() {
+        return nextOffset;
+    }
+
+    // Records the leader has that this replica has not applied yet
+    public long getLagRecords() {
+        if (nextOffset < 0 || leaderOffset < 0) {
+            return -1;
+        }
+        return Math.max(0, leaderOffset - nextOffset);
+    }
+
+    // How far behind the leader's clock the replica is, 0 when caught up
+    public long getLagMillis() {
+        long lag = getLagRecords();
+        if (lag < 0) {
+            return -1;
+        }
+        return lag == 0 ? 0 : Math.max(0, System.currentTimeMillis() - lastAppliedMillis);
+    }
+
+    // Connect, apply records until the connection drops, then retry
+    private void follow() {
+        while (running) {
+            try (Socket s = new Socket(InetAddress.getLoopbackAddress(), leaderPort);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+                socket = s;
+                writer.write(nextOffset < 0 ? "SNAPSHOT" : "FROM|" + nextOffset);
+                writer.newLine();
+                writer.flush();
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    apply(line, reader);
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error in replication connection: " + e.getMessage());
+                }
+            }
+            if (running) {
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void apply(String line, BufferedReader reader) throws IOException {
+        if (line.startsWith("R|")) {
+            // R|offset|millis|record
+            int offsetEnd = line.indexOf('|', 2);
+            int millisEnd = line.indexOf('|', offsetEnd + 1);
+            long offset = Long.parseLong(line.substring(2, offsetEnd));
+            if (offset != nextOffset) {
+                throw new IOException("Expected record " + nextOffset + " but got " + offset);
+            }
+            try {
+                replica.applyChange(line.substring(millisEnd + 1));
+            } catch (RuntimeException e) {
+                System.err.println("Error applying record " + offset + ": " + e.getMessage());
+            }
+            lastAppliedMillis = Long.parseLong(line.substring(offsetEnd + 1, millisEnd));
+            nextOffset = offset + 1;
+        } else if (line.startsWith("H|")) {
+            leaderOffset = Long.parseLong(line.substring(2, line.indexOf('|', 2)));
+        } else if (line.startsWith("SNAPSHOT|")) {
+            replica.loadSnapshot(reader);
+            nextOffset = Long.parseLong(line.substring("SNAPSHOT|".length()));
+        }
+    }
+
+    // Follower process: java ReplicationFollower <leaderPort> <httpPort> [directory]
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int leaderPort = args.length > 0 ? Integer.parseInt(args[0]) : 9090;
+        int httpPort = args.length > 1 ? Integer.parseInt(args[1]) : 8081;
+        String directory = args.length > 2 ? args[2] : "replica";
+
+        ReplicationFollower follower = new ReplicationFollower(directory, leaderPort);
+        BookingHttpServer server = new BookingHttpServer(follower.getReplica(), httpPort);
+        server.setReadOnly(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            follower.stop();
+        }));
+        follower.start();
+        server.start();
+        System.out.println("Replica of leader port " + leaderPort + ", read-only HTTP on http://localhost:" +
+                           server.getPort());
+
+        while (true) {
+            Thread.sleep(5000);
+            System.out.println("Replication: applied offset " + follower.getAppliedOffset() + ", lag " +
+                               follower.getLagRecords() + " records / " + follower.getLagMillis() + " ms");
+        }
+    }
+}
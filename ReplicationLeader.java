@@ -0,0 +1,185 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Leader side of log-shipping replication. Every change the service applies is appended
+// to an ordered in-memory log, and each connected follower gets its own sender thread
+// that streams the log from the follower's offset.
+//
+// Protocol, one line per message over a loopback socket:
+//   follower -> leader  SNAPSHOT            start from a full snapshot
+//                       FROM|<offset>       resume at a log offset
+//   leader -> follower  SNAPSHOT|<offset>   snapshot follows (see writeSnapshot), valid at offset
+//                       R|<offset>|<millis>|<record>   one change record
+//                       H|<end offset>|<millis>        heartbeat, for lag reporting
+//
+// A snapshot's offset is read under the log lock before it is written, so every record
+// before the offset is in it. The snapshot itself is written without the lock - writes
+// go on meanwhile and some may be in it too. Followers skip records already applied and
+// derive seat flags from bookings (see BookingService.reconcileSeats), so replay from
+// the offset ends at the leader's state.
+public class ReplicationLeader implements ChangeListener {
+    private static final int MAX_LOG = 1 << 20;
+    private static final int SEND_BATCH = 1024;
+    private static final long HEARTBEAT_MILLIS = 500;
+
+    private final BookingService service;
+    private final ServerSocket serverSocket;
+    private final List<String> log = new ArrayList<>(); // guarded by this
+    private long baseOffset = 0; // offset of log.get(0)
+    private volatile boolean running = true;
+
+    // Constructor - port 0 picks a free port
+    public ReplicationLeader(BookingService service, int port) throws IOException {
+        this.service = service;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    // Start logging changes and accepting followers
+    public void start() {
+        service.setChangeListener(this);
+        Thread acceptor = new Thread(this::acceptFollowers, "replication-leader");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void stop() {
+        running = false;
+        service.setChangeListener(null);
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing replication socket: " + e.getMessage());
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Offset the next record will get
+    public synchronized long endOffset() {
+        return baseOffset + log.size();
+    }
+
+    @Override
+    public synchronized void onChange(String record) {
+        if (log.size() == MAX_LOG) {
+            // Drop the older half - followers further behind resync from a snapshot
+            log.subList(0, MAX_LOG / 2).clear();
+            baseOffset += MAX_LOG / 2;
+        }
+        log.add(System.currentTimeMillis() + "|" + record);
+        notifyAll();
+    }
+
+    private void acceptFollowers() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread sender = new Thread(() -> serve(socket), "replication-sender-" + socket.getPort());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error accepting follower: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Stream the log to one follower until it disconnects
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            String request = reader.readLine();
+            if (request == null) {
+                return;
+            }
+            long next = request.startsWith("FROM|") ? Long.parseLong(request.substring(5)) : -1;
+
+            boolean snapshot;
+            synchronized (this) {
+                snapshot = next < baseOffset || next > endOffset();
+                if (snapshot) {
+                    next = endOffset();
+                }
+            }
+            if (snapshot) {
+                // Outside the log lock, so changes are not held up while it is written
+                writer.write("SNAPSHOT|" + next);
+                writer.newLine();
+                service.writeSnapshot(writer);
+            }
+
+            List<String> batch = new ArrayList<>();
+            while (running) {
+                long end;
+                synchronized (this) {
+                    if (next >= endOffset()) {
+                        wait(HEARTBEAT_MILLIS);
+                    }
+                    if (next < baseOffset) {
+                        return; // fell out of the log - the follower reconnects and resyncs
+                    }
+                    end = Math.min(endOffset(), next + SEND_BATCH);
+                    for (long offset = next; offset < end; offset++) {
+                        batch.add(log.get((int) (offset - baseOffset)));
+                    }
+                }
+                for (String entry : batch) {
+                    writer.write("R|" + next + "|" + entry);
+                    writer.newLine();
+                    next++;
+                }
+                batch.clear();
+                writer.write("H|" + endOffset() + "|" + System.currentTimeMillis());
+                writer.newLine();
+                writer.flush();
+            }
+        } catch (IOException e) {
+            // Follower went away - it resumes from its offset when it reconnects
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (NumberFormatException e) {
+            System.err.println("Error in follower request: " + e.getMessage());
+        }
+    }
+
+    // Leader process: java ReplicationLeader [replicationPort] [httpPort]
+    public static void main(String[] args) throws IOException {
+        int replicationPort = args.length > 0 ? Integer.parseInt(args[0]) : 9090;
+        int httpPort = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+
+        BookingService service = new BookingService(new CinemaStorage("."));
+        service.load();
+        if (service.getMovies().isEmpty()) {
+            service.createSampleData();
+        }
+
+        ReplicationLeader leader = new ReplicationLeader(service, replicationPort);
+        BookingHttpServer server = new BookingHttpServer(service, httpPort);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            leader.stop();
+            service.shutdown();
+        }));
+        // Start the log before serving so every write is in it
+        leader.start();
+        server.start();
+        System.out.println("Replication leader on port " + leader.getPort() +
+                           ", HTTP on http://localhost:" + server.getPort());
+    }
+}
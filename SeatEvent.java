@@ -0,0 +1,27 @@
+// One change to a showtime's seat map. Versions count seat changes of the showtime, so a
+// client holding a seat map at version V applies the events after V to keep it current.
+public class SeatEvent {
+    public enum Type {
+        RESERVED,
+        RELEASED,
+        RESYNC // events were missed - re-fetch the seat map, it is at least at this version
+    }
+
+    public final String showtimeId;
+    public final long version;
+    public final Type type;
+    public final String seatNumber; // null for RESYNC
+
+    // Constructor
+    public SeatEvent(String showtimeId, long version, Type type, String seatNumber) {
+        this.showtimeId = showtimeId;
+        this.version = version;
+        this.type = type;
+        this.seatNumber = seatNumber;
+    }
+
+    @Override
+    public String toString() {
+        return showtimeId + "@" + version + " " + type + (seatNumber == null ? "" : " " + seatNumber);
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Live seat changes of one showtime as a Flow.Publisher.
+//
+// Each change is recorded once, in a ring of recent events shared by all subscribers, and
+// a subscription is only a cursor into that ring plus its demand. Publishing is O(1) under
+// the showtime lock however many subscribers there are, and the ring bounds how far any
+// of them can fall behind: a subscriber overtaken by it gets a RESYNC event and carries
+// on from the newest version. Subscribers are notified and served on the executor, never
+// on the booking thread.
+public class SeatEventPublisher implements Flow.Publisher<SeatEvent> {
+    private static final int HISTORY = 1024;
+
+    private final Showtime showtime;
+    private final Executor executor;
+    private final AtomicReferenceArray<SeatEvent> history = new AtomicReferenceArray<>(HISTORY);
+    private volatile long version; // version of the newest event, published after its slot
+    private volatile boolean closed;
+    private final List<SeatSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean notifying = new AtomicBoolean();
+
+    // Constructor - caller holds the showtime's lock
+    public SeatEventPublisher(Showtime showtime, Executor executor) {
+        this.showtime = showtime;
+        this.executor = executor;
+        this.version = showtime.seatVersion;
+    }
+
+    // Subscribe to changes from now on
+    @Override
+    public void subscribe(Flow.Subscriber<? super SeatEvent> subscriber) {
+        subscribe(subscriber, -1);
+    }
+
+    // Subscribe to changes after fromVersion, replaying the ones still in the ring.
+    // Older or unknown versions start with a RESYNC event.
+    public void subscribe(Flow.Subscriber<? super SeatEvent> subscriber, long fromVersion) {
+        long newest = version;
+        long start = fromVersion < 0 ? newest : fromVersion;
+        if (start > newest) {
+            start = -1; // a version from before a restart - no ring slot matches it
+        }
+        SeatSubscription subscription = new SeatSubscription(subscriber, start);
+        subscriptions.add(subscription);
+        executor.execute(subscription::start);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    // Record a seat change - called by the showtime under its lock
+    void seatChanged(long newVersion, int seatIndex, boolean reserved) {
+        SeatEvent.Type type = reserved ? SeatEvent.Type.RESERVED : SeatEvent.Type.RELEASED;
+        history.set((int) (newVersion % HISTORY),
+                    new SeatEvent(showtime.showtimeId, newVersion, type, showtime.seatLabel(seatIndex)));
+        version = newVersion;
+        notifySubscribers();
+    }
+
+    // The showtime is gone - subscribers complete once they have the remaining events
+    public void close() {
+        closed = true;
+        notifySubscribers();
+    }
+
+    // One task wakes every subscriber, however many changes arrive meanwhile
+    private void notifySubscribers() {
+        if (notifying.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                notifying.set(false);
+                for (SeatSubscription subscription : subscriptions) {
+                    subscription.schedule();
+                }
+            });
+        }
+    }
+
+    private class SeatSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super SeatEvent> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger(1); // held until onSubscribe has run
+        private long cursor; // version of the last event delivered, touched only while draining
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        // Constructor
+        SeatSubscription(Flow.Subscriber<? super SeatEvent> subscriber, long cursor) {
+            this.subscriber = subscriber;
+            this.cursor = cursor;
+        }
+
+        void start() {
+            subscriber.onSubscribe(this);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " events - must be positive");
+            } else {
+                demand.accumulateAndGet(n, (current, more) -> current + more < 0 ? Long.MAX_VALUE : current + more);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        // Drain on the executor unless a drain is already running; it will see the new work
+        void schedule() {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = work.get();
+            while (true) {
+                deliver();
+                missed = work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void deliver() {
+            while (!cancelled) {
+                if (error != null) {
+                    cancel();
+                    subscriber.onError(error);
+                    return;
+                }
+                long newest = version;
+                if (cursor >= newest) {
+                    if (closed) {
+                        cancel();
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                SeatEvent event = history.get((int) ((cursor + 1) % HISTORY));
+                if (event == null || event.version != cursor + 1) {
+                    // Overtaken by the ring - skip to the newest version
+                    event = new SeatEvent(showtime.showtimeId, newest, SeatEvent.Type.RESYNC, null);
+                }
+                cursor = event.version;
+                demand.decrementAndGet();
+                subscriber.onNext(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Free seats of one showtime for "any seat" bookings, split into one pool per core.
+// A caller takes seats from the pool of its thread and only steals from the other pools
+// once that one is empty, so concurrent callers are handed different seats instead of
+// all racing for the first free one.
+//
+// Each pool is a contiguous run of seat slots consumed through a CAS cursor, so a party
+// usually gets seats next to each other. Seats freed by a cancellation go back on the
+// pool's returned queue. A claimed seat is only a hint - it may have been booked by
+// number since the pool was built, so the booking re-checks it under the showtime lock.
+public class SeatPool {
+    private final int[][] seats;           // seat slots per pool
+    private final AtomicInteger[] cursors; // next unclaimed position per pool
+    private final Queue<Integer>[] returned;
+
+    // Constructor - splits the given free seat slots into poolCount pools
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SeatPool(List<Integer> freeSeats, int poolCount) {
+        this.seats = new int[poolCount][];
+        this.cursors = new AtomicInteger[poolCount];
+        this.returned = new Queue[poolCount];
+        for (int p = 0; p < poolCount; p++) {
+            int from = (int) ((long) freeSeats.size() * p / poolCount);
+            int to = (int) ((long) freeSeats.size() * (p + 1) / poolCount);
+            seats[p] = new int[to - from];
+            for (int i = from; i < to; i++) {
+                seats[p][i - from] = freeSeats.get(i);
+            }
+            cursors[p] = new AtomicInteger();
+            returned[p] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    // Claim one seat slot, -1 when every pool is empty
+    public int claim() {
+        int home = home();
+        for (int i = 0; i < seats.length; i++) {
+            int seatIndex = claimFrom((home + i) % seats.length);
+            if (seatIndex >= 0) {
+                return seatIndex;
+            }
+        }
+        return -1;
+    }
+
+    // Put back a seat slot that was claimed but not booked, or freed by a cancellation
+    public void release(int seatIndex) {
+        returned[home()].add(seatIndex);
+    }
+
+    private int claimFrom(int pool) {
+        Integer seatIndex = returned[pool].poll();
+        if (seatIndex != null) {
+            return seatIndex;
+        }
+        AtomicInteger cursor = cursors[pool];
+        int position;
+        do {
+            position = cursor.get();
+            if (position >= seats[pool].length) {
+                return -1;
+            }
+        } while (!cursor.compareAndSet(position, position + 1));
+        return seats[pool][position];
+    }
+
+    // Pool of the calling thread
+    private int home() {
+        return (int) (Thread.currentThread().threadId() % seats.length);
+    }
+}
@@ -0,0 +1,99 @@
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Session tokens of logged-in users, so the slow password hash is checked once per login
+// and each later request costs one map lookup.
+//
+// A token is 32 random bytes in URL-safe base64. Sessions expire ttlMillis after login.
+// Like DedupeCache they live in two generations of concurrent maps: when the current one
+// is full or as old as the time-to-live it becomes the previous one and the old previous
+// one is dropped whole, so memory is bounded at two generations and expiry needs no sweep.
+// Under a flood of logins the oldest sessions can end early and must log in again.
+public class SessionCache {
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlMillis;
+    private final int generationSize;
+    private volatile Map<String, Session> current = new ConcurrentHashMap<>();
+    private volatile Map<String, Session> previous = new ConcurrentHashMap<>();
+    private volatile long currentStartedAt = System.currentTimeMillis();
+
+    // Constructor - sessions last ttlMillis, at most 2 * generationSize of them
+    public SessionCache(long ttlMillis, int generationSize) {
+        if (ttlMillis <= 0 || generationSize <= 0) {
+            throw new IllegalArgumentException("Session limits must be positive");
+        }
+        this.ttlMillis = ttlMillis;
+        this.generationSize = generationSize;
+    }
+
+    // Start a session for an authenticated user and return its token
+    public String create(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        rotateIfDue();
+        current.put(token, new Session(user, System.currentTimeMillis() + ttlMillis));
+        return token;
+    }
+
+    // User of a live session, null if the token is unknown or expired
+    public User validate(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = current.get(token);
+        if (session == null) {
+            session = previous.get(token);
+        }
+        if (session == null || session.expiresAt < System.currentTimeMillis()) {
+            return null;
+        }
+        return session.user;
+    }
+
+    // End a session, e.g. on logout
+    public void invalidate(String token) {
+        current.remove(token);
+        previous.remove(token);
+    }
+
+    public int size() {
+        return current.size() + previous.size();
+    }
+
+    public synchronized void clear() {
+        previous = new ConcurrentHashMap<>();
+        current = new ConcurrentHashMap<>();
+        currentStartedAt = System.currentTimeMillis();
+    }
+
+    private void rotateIfDue() {
+        if (current.size() < generationSize && System.currentTimeMillis() - currentStartedAt < ttlMillis) {
+            return;
+        }
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (current.size() >= generationSize || now - currentStartedAt >= ttlMillis) {
+                previous = current;
+                current = new ConcurrentHashMap<>();
+                currentStartedAt = now;
+            }
+        }
+    }
+
+    // One logged-in user and when the session ends
+    private static class Session {
+        final User user;
+        final long expiresAt;
+
+        // Constructor
+        Session(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
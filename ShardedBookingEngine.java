@@ -0,0 +1,355 @@
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Booking engine split into partitions by showtime. Each partition is a BookingService
+// with its own showtimes, bookings and storage directory (shard-0, shard-1, ...), and
+// runs on its own single-thread executor, so partitions never share a lock.
+//
+// Requests are routed by hashing the showtime ID; cancellations by the booking ID, which
+// encodes its partition. Movies and users are copied to every partition so any of them
+// can hold a showtime or a booking for them. Catalog-wide queries fan out to all
+// partitions and merge the results. Movie, showtime and user IDs are allocated here so
+// they are unique across partitions.
+public class ShardedBookingEngine {
+    private final Shard[] shards;
+    private final IdAllocator.MarkFile idMarks;
+    private final ReentrantLock userLock = new ReentrantLock();
+    private IdAllocator movieIds;
+    private IdAllocator showtimeIds;
+    private IdAllocator userIds;
+
+    // Constructor - one partition per shard subdirectory of the given directory
+    public ShardedBookingEngine(String directory, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        File dir = new File(directory);
+        dir.mkdirs();
+        this.idMarks = new IdAllocator.MarkFile(new File(dir, "ids.txt").getPath());
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            CinemaStorage storage = new CinemaStorage(new File(dir, "shard-" + i).getPath());
+            shards[i] = new Shard(new BookingService(storage, i, shardCount), i);
+        }
+    }
+
+    // Load every partition in parallel, then set up the engine's ID allocators
+    public void load() {
+        fanOut(service -> {
+            service.load();
+            return null;
+        });
+
+        if (!idMarks.exists()) {
+            // First start - derive the marks from the partitions' data once
+            int maxMovieCount = 0;
+            int maxShowtimeCount = 0;
+            for (Movie movie : getMovies()) {
+                maxMovieCount = Math.max(maxMovieCount, BookingService.parseCounter(movie.movieId, "M"));
+                for (Showtime showtime : movie.showtimes) {
+                    maxShowtimeCount = Math.max(maxShowtimeCount, BookingService.parseCounter(showtime.showtimeId, "S"));
+                }
+            }
+            int maxUserCount = 0;
+            for (User user : getUsers()) {
+                maxUserCount = Math.max(maxUserCount, BookingService.parseCounter(user.userId, "U"));
+            }
+            idMarks.put("MOVIE", maxMovieCount + 1);
+            idMarks.put("SHOWTIME", maxShowtimeCount + 1);
+            idMarks.put("USER", maxUserCount + 1);
+        }
+        movieIds = new IdAllocator("MOVIE", 1, 0, idMarks);
+        showtimeIds = new IdAllocator("SHOWTIME", 1, 0, idMarks);
+        userIds = new IdAllocator("USER", 1, 0, idMarks);
+    }
+
+    // Flush IDs and stop the partition threads
+    public void shutdown() {
+        fanOut(service -> {
+            service.shutdown();
+            return null;
+        });
+        movieIds.flush();
+        showtimeIds.flush();
+        userIds.flush();
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    // Save every partition after each change, or only when asked
+    public void setAutoSave(boolean autoSave) {
+        fanOut(service -> {
+            service.setAutoSave(autoSave);
+            return null;
+        });
+    }
+
+    // ==================== Routing ====================
+
+    // Partition that owns a showtime
+    public int shardOf(String showtimeId) {
+        return Math.floorMod(showtimeId.hashCode(), shards.length);
+    }
+
+    // Partition that owns a booking, -1 if the ID is malformed
+    public int shardOfBooking(String bookingId) {
+        long id = Booking.parseId(bookingId);
+        return id < 0 ? -1 : (int) (id % shards.length);
+    }
+
+    // Run a call on one partition's thread
+    private <T> CompletableFuture<T> submit(int shard, Function<BookingService, T> call) {
+        BookingService service = shards[shard].service;
+        return CompletableFuture.supplyAsync(() -> call.apply(service), shards[shard].executor);
+    }
+
+    private <T> T call(int shard, Function<BookingService, T> call) {
+        return join(submit(shard, call));
+    }
+
+    // Run a call on every partition in parallel, results in partition order
+    private <T> List<T> fanOut(Function<BookingService, T> call) {
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            futures.add(submit(i, call));
+        }
+        List<T> results = new ArrayList<>();
+        for (CompletableFuture<T> future : futures) {
+            results.add(join(future));
+        }
+        return results;
+    }
+
+    // Wait for a result, rethrowing the partition's own exception
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // ==================== Bookings ====================
+
+    public CompletableFuture<BookingResult> bookAsync(String showtimeId, List<String> seatNumbers, String userId) {
+        return submit(shardOf(showtimeId), service -> service.book(showtimeId, seatNumbers, userId));
+    }
+
+    public BookingResult book(String showtimeId, List<String> seatNumbers, String userId) {
+        return join(bookAsync(showtimeId, seatNumbers, userId));
+    }
+
+    public CompletableFuture<BookingResult> cancelAsync(String bookingId) {
+        int shard = shardOfBooking(bookingId);
+        if (shard < 0) {
+            return CompletableFuture.completedFuture(BookingResult.failed("Booking " + bookingId + " not found"));
+        }
+        return submit(shard, service -> service.cancel(bookingId));
+    }
+
+    public BookingResult cancel(String bookingId) {
+        return join(cancelAsync(bookingId));
+    }
+
+    // Split the batch by partition and run the parts in parallel, results in request order
+    public List<BookingResult> bookBatch(List<BookingRequest> requests) {
+        List<List<BookingRequest>> parts = new ArrayList<>();
+        List<List<Integer>> positions = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>());
+            positions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            int shard = shardOf(requests.get(i).showtimeId);
+            parts.get(shard).add(requests.get(i));
+            positions.get(shard).add(i);
+        }
+
+        List<CompletableFuture<List<BookingResult>>> futures = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            List<BookingRequest> part = parts.get(i);
+            futures.add(part.isEmpty() ? CompletableFuture.completedFuture(new ArrayList<>())
+                                       : submit(i, service -> service.bookBatch(part)));
+        }
+        BookingResult[] results = new BookingResult[requests.size()];
+        for (int i = 0; i < shards.length; i++) {
+            List<BookingResult> partResults = join(futures.get(i));
+            for (int j = 0; j < partResults.size(); j++) {
+                results[positions.get(i).get(j)] = partResults.get(j);
+            }
+        }
+        List<BookingResult> resultList = new ArrayList<>(results.length);
+        for (BookingResult result : results) {
+            resultList.add(result);
+        }
+        return resultList;
+    }
+
+    public Availability availability(String showtimeId) {
+        return call(shardOf(showtimeId), service -> service.availability(showtimeId));
+    }
+
+    // Live bookings of one user across all partitions, in booking ID order
+    public List<Booking> bookingsForUser(String userId) {
+        List<Booking> userBookings = new ArrayList<>();
+        for (List<Booking> part : fanOut(service -> service.bookingsForUser(userId))) {
+            userBookings.addAll(part);
+        }
+        userBookings.sort(Comparator.comparingLong(Booking::id));
+        return userBookings;
+    }
+
+    public int liveBookingCount() {
+        int total = 0;
+        for (int count : fanOut(service -> service.getBookings().liveCount())) {
+            total += count;
+        }
+        return total;
+    }
+
+    public int totalSeatsBooked() {
+        int total = 0;
+        for (int count : fanOut(service -> service.getBookings().totalSeatsBooked())) {
+            total += count;
+        }
+        return total;
+    }
+
+    // ==================== Catalog ====================
+
+    // All movies with the showtimes of every partition merged in, ordered by time.
+    // The returned movies are merged copies; their showtimes are the partitions' own.
+    public List<Movie> getMovies() {
+        Map<String, Movie> merged = new LinkedHashMap<>();
+        for (List<Movie> part : fanOut(BookingService::getMovies)) {
+            for (Movie movie : part) {
+                Movie copy = merged.get(movie.movieId);
+                if (copy == null) {
+                    copy = new Movie(movie.movieId, movie.title, movie.duration);
+                    merged.put(movie.movieId, copy);
+                }
+                copy.showtimes.addAll(movie.showtimes);
+            }
+        }
+        for (Movie movie : merged.values()) {
+            movie.showtimes.sort(Comparator.comparing((Showtime showtime) -> showtime.dateTime));
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    public Showtime findShowtime(String showtimeId) {
+        return call(shardOf(showtimeId), service -> service.getIdTable().findShowtime(showtimeId));
+    }
+
+    // Movies exist in every partition, so any of them can own the movie's showtimes
+    public Movie addMovie(String title, int duration) {
+        String movieId = "M" + movieIds.next();
+        fanOut(service -> service.addMovie(movieId, title, duration));
+        return call(0, service -> service.getIdTable().findMovie(movieId));
+    }
+
+    public Showtime addShowtime(String movieId, LocalDateTime dateTime, int totalSeats, String seatPrefix) {
+        String showtimeId = "S" + showtimeIds.next();
+        return call(shardOf(showtimeId),
+                    service -> service.addShowtime(showtimeId, movieId, dateTime, totalSeats, seatPrefix));
+    }
+
+    // Remove a movie from every partition, returns the number of bookings removed
+    public int removeMovie(String movieId) {
+        int removed = 0;
+        for (int count : fanOut(service -> service.removeMovie(movieId))) {
+            removed += count;
+        }
+        return removed;
+    }
+
+    public int removeShowtime(String showtimeId) {
+        return call(shardOf(showtimeId), service -> service.removeShowtime(showtimeId));
+    }
+
+    // Sample catalog as in BookingService, with showtimes spread over the partitions
+    public void createSampleData() {
+        LocalDateTime tomorrow = LocalDateTime.now().plusDays(1);
+
+        Movie movie1 = addMovie("Inception", 148);
+        addShowtime(movie1.movieId, tomorrow.withHour(14).withMinute(0), 20, "A");
+        addShowtime(movie1.movieId, tomorrow.withHour(18).withMinute(30), 20, "A");
+
+        Movie movie2 = addMovie("The Dark Knight", 152);
+        addShowtime(movie2.movieId, tomorrow.withHour(17).withMinute(30), 20, "B");
+        addShowtime(movie2.movieId, tomorrow.plusDays(1).withHour(15).withMinute(0), 20, "B");
+
+        Movie movie3 = addMovie("Interstellar", 169);
+        addShowtime(movie3.movieId, tomorrow.plusDays(2).withHour(19).withMinute(0), 20, "C");
+    }
+
+    // ==================== Users ====================
+
+    // Register a user in every partition, null if the name is already taken. The password
+    // is hashed once here and the partitions share the hash.
+    public User registerUser(String name, String password, String role) {
+        if (findUserByName(name) != null) {
+            return null;
+        }
+        String passwordHash = PasswordHasher.hash(password); // slow - outside the lock
+        // One registration at a time, so every partition agrees on who took a name
+        userLock.lock();
+        try {
+            if (findUserByName(name) != null) {
+                return null;
+            }
+            String userId = "U" + userIds.next();
+            List<User> registered = fanOut(service -> service.registerHashedUser(userId, name, passwordHash, role));
+            return registered.get(0);
+        } finally {
+            userLock.unlock();
+        }
+    }
+
+    // Users are the same in every partition, so the first one answers
+    public User authenticate(String name, String password, String role) {
+        return shards[0].service.authenticate(name, password, role);
+    }
+
+    public User findUserByName(String name) {
+        return shards[0].service.findUserByName(name);
+    }
+
+    public List<User> getUsers() {
+        return shards[0].service.getUsers();
+    }
+
+    // One partition and the thread that runs it
+    private static class Shard {
+        final BookingService service;
+        final ExecutorService executor;
+
+        Shard(BookingService service, int index) {
+            this.service = service;
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "booking-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -1,14 +1,25 @@
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+// Seat state is guarded by the showtime's monitor; callers that need several seat
+// operations to be atomic hold it across them with synchronized (showtime).
 public class Showtime implements Serializable {
     private static final long serialVersionUID = 1L;
     public String showtimeId;
     public LocalDateTime dateTime;
     public int totalSeats;
     public List<Seat> seats;
+    public int ref = -1; // slot in the IdTable
+    public transient volatile SeatPool seatPool; // built by BookingService.bookAny, guarded by the monitor
+    public volatile long seatVersion; // number of seat changes so far, written under the monitor
+    public transient volatile SeatEventPublisher seatEvents; // built by BookingService.seatEvents
+
+    // Free seats at the cached availability's version, rebuilt on the first read after a seat change
+    private transient volatile Availability availability;
+    private transient List<Seat> availableSeats;
 
     // Constructor
     public Showtime(String showtimeId, LocalDateTime dateTime, int totalSeats) {
@@ -18,20 +29,45 @@ public class Showtime implements Serializable {
         this.seats = new ArrayList<>();
     }
 
-    // Simple method to get available seats - no streams
-    public List<Seat> getAvailableSeats() {
-        List<Seat> availableSeats = new ArrayList<>();
+    // Available seats, read-only. Cached until the next seat change.
+    public synchronized List<Seat> getAvailableSeats() {
+        refreshAvailability();
+        return availableSeats;
+    }
+
+    // Free seats with their count and seat grid. While the seats do not change this is a
+    // read of a cached instance, without locking or allocation.
+    public Availability availability() {
+        Availability cached = availability;
+        if (cached != null && cached.version == seatVersion) {
+            return cached;
+        }
+        synchronized (this) {
+            refreshAvailability();
+            return availability;
+        }
+    }
+
+    // Rebuild the cached availability if a seat changed since it was built - caller holds the monitor
+    private void refreshAvailability() {
+        if (availability != null && availability.version == seatVersion) {
+            return;
+        }
+        List<Seat> free = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
         for (int i = 0; i < seats.size(); i++) {
             Seat seat = seats.get(i);
             if (!seat.isBooked) {
-                availableSeats.add(seat);
+                free.add(seat);
+                labels.add(seat.seatNumber);
             }
         }
-        return availableSeats;
+        availableSeats = Collections.unmodifiableList(free);
+        availability = new Availability(showtimeId, totalSeats, labels, seatVersion);
     }
 
     // Check if a specific seat is available
-    public boolean isSeatAvailable(String seatNumber) {
+    public synchronized boolean isSeatAvailable(String seatNumber) {
         for (int i = 0; i < seats.size(); i++) {
             Seat seat = seats.get(i);
             if (seat.seatNumber.equals(seatNumber)) {
@@ -41,40 +77,71 @@ public class Showtime implements Serializable {
         return false;
     }
 
-    // Reserve a seat - simplified
-    public Seat reserveSeat(String seatNumber) {
+    // Find the slot index of a seat in this showtime's layout, -1 if not found
+    public int indexOfSeat(String seatNumber) {
         for (int i = 0; i < seats.size(); i++) {
-            Seat seat = seats.get(i);
-            if (seat.seatNumber.equals(seatNumber)) {
-                if (!seat.isBooked) {
-                    seat.isBooked = true;
-                    return seat;
-                } else {
-                    throw new IllegalStateException("Seat " + seatNumber + " is already reserved");
-                }
+            if (seats.get(i).seatNumber.equals(seatNumber)) {
+                return i;
             }
         }
-        throw new IllegalArgumentException("Seat " + seatNumber + " not found");
+        return -1;
+    }
+
+    // Seat label for a slot index
+    public String seatLabel(int seatIndex) {
+        return seats.get(seatIndex).seatNumber;
+    }
+
+    // Reserve a seat - simplified
+    public synchronized Seat reserveSeat(String seatNumber) {
+        int seatIndex = indexOfSeat(seatNumber);
+        if (seatIndex < 0) {
+            throw new IllegalArgumentException("Seat " + seatNumber + " not found");
+        }
+        return reserveSeatAt(seatIndex);
+    }
+
+    // Reserve a seat by slot index
+    public synchronized Seat reserveSeatAt(int seatIndex) {
+        Seat seat = seats.get(seatIndex);
+        if (seat.isBooked) {
+            throw new IllegalStateException("Seat " + seat.seatNumber + " is already reserved");
+        }
+        seat.isBooked = true;
+        seatChanged(seatIndex, true);
+        return seat;
     }
 
     // Cancel a seat reservation - simplified
-    public void cancelSeat(String seatNumber) {
-        for (int i = 0; i < seats.size(); i++) {
-            Seat seat = seats.get(i);
-            if (seat.seatNumber.equals(seatNumber)) {
-                if (seat.isBooked) {
-                    seat.isBooked = false;
-                    return;
-                } else {
-                    throw new IllegalStateException("Seat " + seatNumber + " is not reserved");
-                }
-            }
+    public synchronized void cancelSeat(String seatNumber) {
+        int seatIndex = indexOfSeat(seatNumber);
+        if (seatIndex < 0) {
+            throw new IllegalArgumentException("Seat " + seatNumber + " not found");
+        }
+        cancelSeatAt(seatIndex);
+    }
+
+    // Cancel a seat reservation by slot index
+    public synchronized void cancelSeatAt(int seatIndex) {
+        Seat seat = seats.get(seatIndex);
+        if (!seat.isBooked) {
+            throw new IllegalStateException("Seat " + seat.seatNumber + " is not reserved");
+        }
+        seat.isBooked = false;
+        seatChanged(seatIndex, false);
+    }
+
+    // Count a seat change and pass it to the event stream, if there is one
+    private void seatChanged(int seatIndex, boolean reserved) {
+        seatVersion++;
+        SeatEventPublisher events = seatEvents;
+        if (events != null) {
+            events.seatChanged(seatVersion, seatIndex, reserved);
         }
-        throw new IllegalArgumentException("Seat " + seatNumber + " not found");
     }
     
     // Count booked seats
-    public int getBookedSeatsCount() {
+    public synchronized int getBookedSeatsCount() {
         int count = 0;
         for (Seat seat : seats) {
             if (seat.isBooked) {
@@ -4,10 +4,11 @@ public class User implements Serializable {
     private static final long serialVersionUID = 1L;
     public String userId;
     public String name;
-    public String password;
+    public String password; // salted hash from PasswordHasher once registered or loaded
     public String role;
     public String email;
     public String phoneNumber;
+    public int ref = -1; // slot in the IdTable
 
     // Constructor
     public User(String userId, String name, String password, String role, String email, String phoneNumber) {
@@ -0,0 +1,200 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Virtual waiting room for on-sale spikes. Each showtime has its own queue: an arrival
+// takes the next ticket number, and tickets are admitted into the booking flow in order
+// at a fixed rate per second.
+//
+// Admission is three numbers per queue - tickets issued, tickets admitted, and when it
+// was last advanced - so a million waiters cost nothing beyond their ticket numbers, and no
+// thread waits on anyone's behalf. Admission is advanced lazily by whichever caller
+// polls first after time has passed; capacity not used while the queue is empty is not
+// saved up, so a quiet room cannot release a burst later.
+//
+// A ticket is its number with an HMAC over showtime, user and number under a key made
+// at startup, so tickets cannot be guessed or used for another showtime or user. An
+// admitted ticket is good for one booking attempt within useWindowMillis of admission;
+// only tickets used inside that window are remembered.
+public class WaitingRoom {
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_BYTES = 16;
+    private static final int FRONTIER_NOTES = 64;
+
+    private final long admitsPerSecond;
+    private final long useWindowMillis;
+    private final byte[] key = new byte[32];
+    private final Map<String, Queue> queues = new ConcurrentHashMap<>();
+
+    // Constructor
+    public WaitingRoom(long admitsPerSecond, long useWindowMillis) {
+        if (admitsPerSecond <= 0 || useWindowMillis <= 0) {
+            throw new IllegalArgumentException("Admission rate and use window must be positive");
+        }
+        this.admitsPerSecond = admitsPerSecond;
+        this.useWindowMillis = useWindowMillis;
+        new SecureRandom().nextBytes(key);
+    }
+
+    // The waiting room configured by the cinema.waitingRoom.admitsPerSecond system
+    // property, null when the property is not set. Admitted tickets must be used within
+    // cinema.waitingRoom.useWindowSeconds (default 120).
+    public static WaitingRoom create() {
+        Long rate = Long.getLong("cinema.waitingRoom.admitsPerSecond");
+        long useWindowSeconds = Long.getLong("cinema.waitingRoom.useWindowSeconds", 120);
+        return rate == null ? null : new WaitingRoom(rate, useWindowSeconds * 1000);
+    }
+
+    // Join the queue for a showtime and return the user's ticket. Callers check that the
+    // showtime exists - every showtime joined keeps its queue. Advancing first spends the
+    // capacity of the quiet spell before this ticket, so it is not admitted out of a backlog
+    // of unused admissions.
+    public String join(String showtimeId, String userId) {
+        Queue queue = queues.computeIfAbsent(showtimeId, id -> new Queue());
+        advance(queue);
+        long number = queue.issued.getAndIncrement();
+        return number + "-" + Base64.getUrlEncoder().withoutPadding().encodeToString(mac(showtimeId, userId, number));
+    }
+
+    // Tickets ahead of this one, 0 once it is admitted. Throws IllegalArgumentException for
+    // a ticket that is not the user's for this showtime, has been used or has expired.
+    public long position(String showtimeId, String userId, String ticket) {
+        Queue queue = queues.get(showtimeId);
+        long number = verify(queue, showtimeId, userId, ticket);
+        long admitted = advance(queue);
+        if (number >= admitted) {
+            return number - admitted + 1;
+        }
+        // Used before expired: expire raises expiredBelow before it forgets used tickets
+        if (queue.used.contains(number)) {
+            throw new IllegalArgumentException("Ticket " + ticket + " has been used");
+        }
+        if (number < queue.expiredBelow) {
+            throw new IllegalArgumentException("Ticket " + ticket + " has expired");
+        }
+        return 0;
+    }
+
+    public boolean isAdmitted(String showtimeId, String userId, String ticket) {
+        return position(showtimeId, userId, ticket) == 0;
+    }
+
+    // Use an admitted ticket for a booking attempt; true only the first time, and only
+    // while the ticket is admitted and not expired
+    public boolean redeem(String showtimeId, String userId, String ticket) {
+        try {
+            if (position(showtimeId, userId, ticket) != 0) {
+                return false;
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        Queue queue = queues.get(showtimeId);
+        long number = Long.parseLong(ticket.substring(0, ticket.indexOf('-')));
+        // Checked again after marking, in case the ticket expired in between
+        return queue.used.add(number) && number >= queue.expiredBelow;
+    }
+
+    // Expected wait for a position at the current admission rate
+    public long estimatedWaitMillis(long position) {
+        return position * 1000 / admitsPerSecond;
+    }
+
+    // Number of tickets still waiting for a showtime
+    public long waiting(String showtimeId) {
+        Queue queue = queues.get(showtimeId);
+        return queue == null ? 0 : queue.issued.get() - advance(queue);
+    }
+
+    // Ticket number of a ticket that is the user's for this showtime
+    private long verify(Queue queue, String showtimeId, String userId, String ticket) {
+        int dash = ticket == null ? -1 : ticket.indexOf('-');
+        if (queue == null || userId == null || dash < 0) {
+            throw new IllegalArgumentException("Unknown ticket " + ticket);
+        }
+        long number;
+        byte[] actual;
+        try {
+            number = Long.parseLong(ticket.substring(0, dash));
+            actual = Base64.getUrlDecoder().decode(ticket.substring(dash + 1));
+        } catch (IllegalArgumentException e) { // also covers NumberFormatException
+            throw new IllegalArgumentException("Unknown ticket " + ticket);
+        }
+        if (number < 0 || number >= queue.issued.get()
+                || !MessageDigest.isEqual(mac(showtimeId, userId, number), actual)) {
+            throw new IllegalArgumentException("Unknown ticket " + ticket);
+        }
+        return number;
+    }
+
+    private byte[] mac(String showtimeId, String userId, long number) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+            byte[] full = mac.doFinal((showtimeId + "|" + userId + "|" + number).getBytes(StandardCharsets.UTF_8));
+            return Arrays.copyOf(full, MAC_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " is not available", e);
+        }
+    }
+
+    // Admit the tickets whose turn has come since the last advance; returns the frontier
+    private long advance(Queue queue) {
+        long now = System.nanoTime();
+        long last = queue.advancedAt.get();
+        // In double to avoid overflow after a long quiet spell
+        long admits = (long) ((double) (now - last) * admitsPerSecond / 1e9);
+        if (admits == 0) {
+            return queue.admitted.get();
+        }
+        // One caller wins each time step; the others read the frontier it publishes
+        if (queue.advancedAt.compareAndSet(last, last + (long) (admits * 1e9 / admitsPerSecond))) {
+            long issued = queue.issued.get();
+            long admitted = queue.admitted.accumulateAndGet(admits, (frontier, n) -> Math.min(frontier + n, issued));
+            expire(queue, admitted, now);
+            return admitted;
+        }
+        return queue.admitted.get();
+    }
+
+    // Note when the frontier reached admitted, and expire the tickets admitted more than
+    // the use window ago - forgetting which of them were used. Advances within 1/64 of the
+    // window share one note, so there are at most 64 and a ticket may expire that much early.
+    private void expire(Queue queue, long admitted, long now) {
+        long windowNanos = useWindowMillis * 1_000_000;
+        synchronized (queue) {
+            long[] latest = queue.frontiers.peekLast();
+            if (latest != null && now - latest[0] < windowNanos / FRONTIER_NOTES) {
+                latest[1] = admitted;
+            } else {
+                queue.frontiers.addLast(new long[] {now, admitted});
+            }
+            long cutoff = now - windowNanos;
+            while (!queue.frontiers.isEmpty() && queue.frontiers.peekFirst()[0] - cutoff < 0) {
+                queue.expiredBelow = queue.frontiers.pollFirst()[1];
+            }
+            queue.used.headSet(queue.expiredBelow).clear();
+        }
+    }
+
+    // Queue state for one showtime
+    private static class Queue {
+        final AtomicLong issued = new AtomicLong();   // next ticket number
+        final AtomicLong admitted = new AtomicLong(); // tickets below this may book
+        final AtomicLong advancedAt = new AtomicLong(System.nanoTime());
+        final NavigableSet<Long> used = new ConcurrentSkipListSet<>(); // admitted tickets used
+        final ArrayDeque<long[]> frontiers = new ArrayDeque<>(); // {nanoTime, admitted}, guarded by this
+        volatile long expiredBelow; // tickets below this are past their use window
+    }
+}